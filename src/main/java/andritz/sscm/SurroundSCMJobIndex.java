@@ -0,0 +1,191 @@
+package andritz.sscm;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.model.Item;
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.ItemListener;
+import hudson.model.listeners.SCMListener;
+import hudson.scm.SCM;
+import hudson.scm.SCMRevisionState;
+import hudson.scm.SurroundSCM;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import jenkins.model.Jenkins;
+import jenkins.scm.api.SCMSource;
+import jenkins.scm.api.SCMSourceOwner;
+import jenkins.scm.api.SCMSourceOwners;
+import jenkins.triggers.SCMTriggerItem;
+
+/**
+ * In-memory index of the jobs using {@link SurroundSCM} and the owners of {@link SurroundSCMSource}s, keyed like
+ * {@link SurroundSCM#getKey()}. Used by {@link SurroundSCMNotifyCommitAction} to find what a check-in affects without
+ * walking every item on each notification.
+ * <p>
+ * The index is built lazily and thrown away whenever an item is created, updated, renamed or deleted. Pipeline jobs
+ * only report the SCMs of their past builds, so it is also thrown away when a build checks out a SurroundSCM the index
+ * does not know for its job yet.
+ */
+public final class SurroundSCMJobIndex {
+
+   /**
+    * Sources list every branch below their configured one, so they are indexed with this branch placeholder.
+    */
+   private static final String ANY_BRANCH = "*";
+
+   private static Map<String, Set<String>> index;
+
+   private SurroundSCMJobIndex() {
+   }
+
+   /**
+    * Finds the jobs whose SurroundSCM covers a check-in to the repository (its own repository or any parent).
+    *
+    * @return Returns the full names of the matching jobs.
+    */
+   @Nonnull
+   public static List<String> findJobs(String server, String serverPort, String branch, String repository) {
+      List<String> result = new ArrayList<>();
+      Map<String, Set<String>> current = getIndex();
+      for (String candidate : repositoryAndParents(repository)) {
+         Set<String> names = current.get(SurroundSCM.createKey(server, serverPort, branch, candidate));
+         if (names != null) {
+            result.addAll(names);
+         }
+      }
+      return result;
+   }
+
+   /**
+    * Finds the owners of SurroundSCMSources covering the repository (its own repository or any parent).
+    *
+    * @return Returns the full names of the matching source owners.
+    */
+   @Nonnull
+   public static List<String> findSourceOwners(String server, String serverPort, String repository) {
+      return findJobs(server, serverPort, ANY_BRANCH, repository);
+   }
+
+   /**
+    * @return Returns the repository followed by its parents, ex. 'Mainline/A/B', 'Mainline/A', 'Mainline'.
+    */
+   static List<String> repositoryAndParents(String repository) {
+      List<String> result = new ArrayList<>();
+      String current = repository;
+      while (current != null && !current.isEmpty()) {
+         result.add(current);
+         int idxSlash = current.lastIndexOf('/');
+         current = idxSlash > 0 ? current.substring(0, idxSlash) : null;
+      }
+      return result;
+   }
+
+   public static synchronized void invalidate() {
+      index = null;
+   }
+
+   /**
+    * Throws the index away if the job is not indexed for the SurroundSCM it just checked out.
+    */
+   static synchronized void checkedOut(String key, String fullName) {
+      if (index != null) {
+         Set<String> names = index.get(key);
+         if (names == null || !names.contains(fullName)) {
+            index = null;
+         }
+      }
+   }
+
+   private static synchronized Map<String, Set<String>> getIndex() {
+      if (index == null) {
+         index = build();
+      }
+      return index;
+   }
+
+   private static Map<String, Set<String>> build() {
+      Map<String, Set<String>> result = new HashMap<>();
+      try (ACLContext ctx = ACL.as(ACL.SYSTEM)) {
+         for (Job<?, ?> job : Jenkins.get().getAllItems(Job.class)) {
+            SCMTriggerItem item = SCMTriggerItem.SCMTriggerItems.asSCMTriggerItem(job);
+            if (item == null) {
+               continue;
+            }
+            for (SCM scm : item.getSCMs()) {
+               if (scm instanceof SurroundSCM) {
+                  add(result, scm.getKey(), job.getFullName());
+               }
+            }
+         }
+         for (SCMSourceOwner owner : SCMSourceOwners.all()) {
+            for (SCMSource source : owner.getSCMSources()) {
+               if (source instanceof SurroundSCMSource) {
+                  SurroundSCMSource sscmSource = (SurroundSCMSource) source;
+                  add(result, SurroundSCM.createKey(sscmSource.getServer(), sscmSource.getServerPort(), ANY_BRANCH,
+                        sscmSource.getRepository()), owner.getFullName());
+               }
+            }
+         }
+      }
+      for (Map.Entry<String, Set<String>> e : result.entrySet()) {
+         e.setValue(Collections.unmodifiableSet(e.getValue()));
+      }
+      return result;
+   }
+
+   private static void add(Map<String, Set<String>> result, String key, String fullName) {
+      result.computeIfAbsent(key, k -> new LinkedHashSet<>()).add(fullName);
+   }
+
+   @Extension
+   public static class InvalidatingItemListener extends ItemListener {
+      @Override
+      public void onCreated(Item item) {
+         invalidate();
+      }
+
+      @Override
+      public void onUpdated(Item item) {
+         invalidate();
+      }
+
+      @Override
+      public void onDeleted(Item item) {
+         invalidate();
+      }
+
+      @Override
+      public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+         invalidate();
+      }
+
+      @Override
+      public void onLoaded() {
+         invalidate();
+      }
+   }
+
+   @Extension
+   public static class InvalidatingSCMListener extends SCMListener {
+      @Override
+      public void onCheckout(Run<?, ?> build, SCM scm, FilePath workspace, TaskListener listener, File changelogFile,
+            SCMRevisionState pollingBaseline) {
+         if (scm instanceof SurroundSCM) {
+            checkedOut(scm.getKey(), build.getParent().getFullName());
+         }
+      }
+   }
+}
@@ -0,0 +1,121 @@
+package andritz.sscm;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.logging.Logger;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.kohsuke.stapler.HttpResponse;
+import org.kohsuke.stapler.HttpResponses;
+import org.kohsuke.stapler.QueryParameter;
+
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.Item;
+import hudson.model.Job;
+import hudson.model.UnprotectedRootAction;
+import hudson.scm.SurroundSCM;
+import hudson.scm.SurroundSCMPollScheduler;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import hudson.util.Secret;
+import jenkins.model.Jenkins;
+import jenkins.scm.api.SCMSource;
+import jenkins.scm.api.SCMSourceOwner;
+import jenkins.triggers.SCMTriggerItem;
+
+/**
+ * Lets a Surround SCM server trigger tell Jenkins about a check-in, so jobs can poll hourly as a safety net instead
+ * of every minute.
+ * <p>
+ * ex. {@code curl "http://jenkins/surround-scm/notifyCommit?server=sscm&port=4900&branch=Main&repository=Main/A&token=..."}
+ * <p>
+ * The endpoint needs no Jenkins login, instead the caller must pass the token configured in the global Surround SCM
+ * settings. Jobs using the repository (or one of its parents) get a poll scheduled, owners of matching
+ * {@link SurroundSCMSource}s get a branch indexing scheduled.
+ */
+@Extension
+public class SurroundSCMNotifyCommitAction implements UnprotectedRootAction {
+   private static final Logger logger = Logger.getLogger(SurroundSCMNotifyCommitAction.class.getName());
+
+   public static final String URL_NAME = "surround-scm";
+
+   private static final String DEFAULT_PORT = "4900";
+
+   @Override
+   public String getIconFileName() {
+      return null;
+   }
+
+   @Override
+   public String getDisplayName() {
+      return "Surround SCM";
+   }
+
+   @Override
+   public String getUrlName() {
+      return URL_NAME;
+   }
+
+   public HttpResponse doNotifyCommit(@QueryParameter String server, @QueryParameter String port,
+         @QueryParameter String branch, @QueryParameter String repository, @QueryParameter String token) {
+      SurroundSCM.SurroundSCMDescriptor descriptor = Jenkins.get()
+            .getDescriptorByType(SurroundSCM.SurroundSCMDescriptor.class);
+      Secret expected = descriptor != null ? descriptor.getNotifyCommitToken() : null;
+      if (expected == null || Util.fixEmpty(expected.getPlainText()) == null) {
+         return HttpResponses.error(HttpServletResponse.SC_FORBIDDEN, "The notifyCommit token is not configured.");
+      }
+      if (token == null || !MessageDigest.isEqual(expected.getPlainText().getBytes(StandardCharsets.UTF_8),
+            token.getBytes(StandardCharsets.UTF_8))) {
+         return HttpResponses.error(HttpServletResponse.SC_FORBIDDEN, "Invalid token.");
+      }
+
+      server = Util.fixEmptyAndTrim(server);
+      branch = Util.fixEmptyAndTrim(branch);
+      repository = Util.fixEmptyAndTrim(repository);
+      port = Util.fixEmptyAndTrim(port);
+      if (server == null || branch == null || repository == null) {
+         return HttpResponses.error(HttpServletResponse.SC_BAD_REQUEST,
+               "The server, branch and repository parameters are required.");
+      }
+      if (port == null) {
+         port = DEFAULT_PORT;
+      }
+
+      StringBuilder response = new StringBuilder();
+      try (ACLContext ctx = ACL.as(ACL.SYSTEM)) {
+         Jenkins jenkins = Jenkins.get();
+         for (String fullName : SurroundSCMJobIndex.findJobs(server, port, branch, repository)) {
+            Job<?, ?> job = jenkins.getItemByFullName(fullName, Job.class);
+            SCMTriggerItem item = job != null ? SCMTriggerItem.SCMTriggerItems.asSCMTriggerItem(job) : null;
+            if (item == null) {
+               continue;
+            }
+            // A backed off adaptive poll would not query the server and drop the notification.
+            SurroundSCMPollScheduler.get().reset(fullName);
+            if (item.schedulePolling()) {
+               response.append("Scheduled polling of ").append(fullName).append('\n');
+            }
+         }
+         for (String fullName : SurroundSCMJobIndex.findSourceOwners(server, port, repository)) {
+            Item item = jenkins.getItemByFullName(fullName);
+            if (item instanceof SCMSourceOwner) {
+               SCMSourceOwner owner = (SCMSourceOwner) item;
+               for (SCMSource source : owner.getSCMSources()) {
+                  if (source instanceof SurroundSCMSource) {
+                     owner.onSCMSourceUpdated(source);
+                  }
+               }
+               response.append("Scheduled indexing of ").append(fullName).append('\n');
+            }
+         }
+      }
+      if (response.length() == 0) {
+         response.append(String.format("No jobs found for sscm://%s:%s//%s//%s%n", server, port, branch, repository));
+      }
+      logger.fine(response.toString());
+      return HttpResponses.plainText(response.toString());
+   }
+}
@@ -61,6 +61,11 @@ public class SurroundSCMSource extends SCMSource {
    @CheckForNull
    private String credentialsId;
 
+   @CheckForNull
+   private SurroundSCM.FirstBuildChangelog firstBuildChangelog;
+
+   private int firstBuildLookbackDays;
+
    public String getServer() {
       return server;
    }
@@ -86,6 +91,24 @@ public class SurroundSCMSource extends SCMSource {
       this.credentialsId = credentialsId;
    }
 
+   public SurroundSCM.FirstBuildChangelog getFirstBuildChangelog() {
+      return firstBuildChangelog;
+   }
+
+   @DataBoundSetter
+   public void setFirstBuildChangelog(@CheckForNull SurroundSCM.FirstBuildChangelog firstBuildChangelog) {
+      this.firstBuildChangelog = firstBuildChangelog;
+   }
+
+   public int getFirstBuildLookbackDays() {
+      return firstBuildLookbackDays;
+   }
+
+   @DataBoundSetter
+   public void setFirstBuildLookbackDays(int firstBuildLookbackDays) {
+      this.firstBuildLookbackDays = firstBuildLookbackDays;
+   }
+
    @DataBoundConstructor
    public SurroundSCMSource(String server, String serverPort, String branch, String repository, String credentialsId) {
       this.server = server;
@@ -178,6 +201,12 @@ public class SurroundSCMSource extends SCMSource {
          argBranch = sscmHead.getName();
       }
       SurroundSCM sscm = new SurroundSCM(server, serverPort, argBranch, repository, credentialsId);
+      sscm.setFirstBuildChangelog(firstBuildChangelog);
+      sscm.setFirstBuildLookbackDays(firstBuildLookbackDays);
+      if (!branch.equals(argBranch)) {
+         // branches are listed below the configured one, it is their parent
+         sscm.setParentBranch(branch);
+      }
       return sscm;
    }
 
@@ -1,32 +1,29 @@
 package hudson.scm;
 
 import java.io.BufferedOutputStream;
-import java.io.BufferedReader;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
 import java.io.Serializable;
-import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
 
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
@@ -44,23 +41,32 @@ import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.export.Exported;
 
+import hudson.AbortException;
 import hudson.EnvVars;
 import hudson.Extension;
 import hudson.FilePath;
 import hudson.Launcher;
 import hudson.Util;
 import hudson.model.AbstractBuild;
+import hudson.model.Computer;
 import hudson.model.Item;
 import hudson.model.Job;
 import hudson.model.Node;
 import hudson.model.Run;
 import hudson.model.TaskListener;
 import hudson.scm.config.RSAKey;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
 import hudson.util.ArgumentListBuilder;
+import hudson.util.ForkOutputStream;
 import hudson.util.ListBoxModel;
+import hudson.util.Secret;
+import hudson.util.StreamTaskListener;
 import jenkins.model.Jenkins;
 import net.sf.json.JSONObject;
 
+import andritz.sscm.SurroundSCMJobIndex;
+
 @Extension
 public final class SurroundSCM extends SCM implements Serializable {
     private static final long serialVersionUID = 7899036674317233131L;
@@ -94,6 +100,24 @@ public final class SurroundSCM extends SCM implements Serializable {
      */
     private static transient final String SURROUND_DATETIME_FORMAT_STR_2 = "yyyyMMddHH:mm:ss";
 
+    private static transient final int DEFAULT_FIRST_BUILD_LOOKBACK_DAYS = 7;
+
+    /**
+     * Side file in the build directory holding the full 'sscm get' output when it is summarized.
+     */
+    private static transient final String RAW_GET_OUTPUT_FILE = "sscm-get.log.gz";
+
+    /**
+     * Incremental checkout falls back to a full get when more files than this changed since the baseline.
+     */
+    private static transient final int INCREMENTAL_MAX_FILES = Integer.getInteger(SurroundSCM.class.getName() + ".incrementalMaxFiles", 500);
+
+    /**
+     * Most characters of file names passed to one incremental 'sscm get', more files are fetched with several gets.
+     * Windows limits a command line to 32K characters, cmd.exe to 8K.
+     */
+    private static transient final int INCREMENTAL_MAX_COMMAND_CHARS = Integer.getInteger(SurroundSCM.class.getName() + ".incrementalMaxCommandChars", 6000);
+
     // config options
     private String server;
     private String serverPort;
@@ -113,6 +137,77 @@ public final class SurroundSCM extends SCM implements Serializable {
      */
     private boolean bIncludeOutput;
 
+    /**
+     * When set, polling runs 'sscm cc' on the controller (or on {@link #pollingNode}) instead of requiring a
+     * workspace on the agent that last built the job.
+     */
+    private boolean pollWithoutWorkspace;
+
+    /**
+     * Name of the node used for workspace-less polling. Null means the controller.
+     */
+    private String pollingNode;
+
+    /**
+     * When set, {@link SurroundSCMPollScheduler} decides whether a cron triggered poll actually queries the server.
+     */
+    private boolean adaptivePolling;
+
+    /**
+     * When set, checkout only fetches the files changed since the baseline build, as long as the workspace still holds
+     * what that build checked out.
+     */
+    private boolean incrementalCheckout;
+
+    /**
+     * When set, checkout skips the get if the server reports no changes since the baseline build and the workspace
+     * still holds what that build checked out.
+     */
+    private boolean skipUnchangedCheckout;
+
+    /**
+     * When set, the incremental and skip paths also check the {@link SurroundSCMWorkspaceManifest} against the disk.
+     */
+    private boolean verifyWorkspace;
+
+    /**
+     * When set (and the output is included), 'sscm get' file lines are counted instead of logged, see
+     * {@link SurroundSCMGetOutputFilter}.
+     */
+    private boolean summarizeOutput;
+
+    /**
+     * Changelog of a build without baseline, see {@link FirstBuildChangelog}. Null means {@link FirstBuildChangelog#ALL}.
+     */
+    private FirstBuildChangelog firstBuildChangelog;
+    private int firstBuildLookbackDays;
+
+    /**
+     * Branch whose last build starts the first build's changelog for {@link FirstBuildChangelog#PARENT}, set by the
+     * multibranch source to the branch it lists the child branches of.
+     */
+    private String parentBranch;
+
+    /**
+     * Number of concurrent 'sscm get' processes for a full checkout, 0 or 1 for a single one. Capped by
+     * {@link SurroundSCMNodeProperty#getMaxParallelCheckout()}.
+     */
+    private int parallelCheckout;
+
+    /**
+     * Sparse checkout, see {@link SurroundSCMRepositoryScope}. Newline separated lists of sub-repositories.
+     */
+    private String includedRepositories;
+    private String excludedRepositories;
+
+    /**
+     * Polling filters, see {@link SurroundSCMChangeFilter}. Each one is a newline separated list.
+     */
+    private String includedPaths;
+    private String excludedPaths;
+    private String excludedUsers;
+    private String excludedMessages;
+
     /**
      * @deprecated This was used to store the absolute path to the Surround SCM RSA
      *             Key file. We now use {@link RSAKey} to store this information.
@@ -307,6 +402,180 @@ public final class SurroundSCM extends SCM implements Serializable {
         this.bIncludeOutput = includeOutput;
     }
 
+    @Exported
+    public boolean isPollWithoutWorkspace() {
+        return pollWithoutWorkspace;
+    }
+
+    @DataBoundSetter
+    public void setPollWithoutWorkspace(boolean pollWithoutWorkspace) {
+        this.pollWithoutWorkspace = pollWithoutWorkspace;
+    }
+
+    @Exported
+    public String getPollingNode() {
+        return pollingNode;
+    }
+
+    @DataBoundSetter
+    public void setPollingNode(String pollingNode) {
+        this.pollingNode = Util.fixEmptyAndTrim(pollingNode);
+    }
+
+    @Exported
+    public boolean isAdaptivePolling() {
+        return adaptivePolling;
+    }
+
+    @DataBoundSetter
+    public void setAdaptivePolling(boolean adaptivePolling) {
+        this.adaptivePolling = adaptivePolling;
+    }
+
+    @Exported
+    public boolean isIncrementalCheckout() {
+        return incrementalCheckout;
+    }
+
+    @DataBoundSetter
+    public void setIncrementalCheckout(boolean incrementalCheckout) {
+        this.incrementalCheckout = incrementalCheckout;
+    }
+
+    @Exported
+    public boolean isSkipUnchangedCheckout() {
+        return skipUnchangedCheckout;
+    }
+
+    @DataBoundSetter
+    public void setSkipUnchangedCheckout(boolean skipUnchangedCheckout) {
+        this.skipUnchangedCheckout = skipUnchangedCheckout;
+    }
+
+    @Exported
+    public boolean isVerifyWorkspace() {
+        return verifyWorkspace;
+    }
+
+    @DataBoundSetter
+    public void setVerifyWorkspace(boolean verifyWorkspace) {
+        this.verifyWorkspace = verifyWorkspace;
+    }
+
+    @Exported
+    public boolean isSummarizeOutput() {
+        return summarizeOutput;
+    }
+
+    @DataBoundSetter
+    public void setSummarizeOutput(boolean summarizeOutput) {
+        this.summarizeOutput = summarizeOutput;
+    }
+
+    @Exported
+    @Nonnull
+    public FirstBuildChangelog getFirstBuildChangelog() {
+        return firstBuildChangelog != null ? firstBuildChangelog : FirstBuildChangelog.ALL;
+    }
+
+    @DataBoundSetter
+    public void setFirstBuildChangelog(FirstBuildChangelog firstBuildChangelog) {
+        this.firstBuildChangelog = firstBuildChangelog;
+    }
+
+    /**
+     * @return Returns the lookback window in days, 7 if not configured.
+     */
+    @Exported
+    public int getFirstBuildLookbackDays() {
+        return firstBuildLookbackDays > 0 ? firstBuildLookbackDays : DEFAULT_FIRST_BUILD_LOOKBACK_DAYS;
+    }
+
+    @DataBoundSetter
+    public void setFirstBuildLookbackDays(int firstBuildLookbackDays) {
+        this.firstBuildLookbackDays = Math.max(0, firstBuildLookbackDays);
+    }
+
+    @Exported
+    public String getParentBranch() {
+        return parentBranch;
+    }
+
+    @DataBoundSetter
+    public void setParentBranch(String parentBranch) {
+        this.parentBranch = Util.fixEmptyAndTrim(parentBranch);
+    }
+
+    @Exported
+    public int getParallelCheckout() {
+        return parallelCheckout;
+    }
+
+    @DataBoundSetter
+    public void setParallelCheckout(int parallelCheckout) {
+        this.parallelCheckout = Math.max(0, parallelCheckout);
+    }
+
+    @Exported
+    public String getIncludedRepositories() {
+        return includedRepositories;
+    }
+
+    @DataBoundSetter
+    public void setIncludedRepositories(String includedRepositories) {
+        this.includedRepositories = Util.fixEmptyAndTrim(includedRepositories);
+    }
+
+    @Exported
+    public String getExcludedRepositories() {
+        return excludedRepositories;
+    }
+
+    @DataBoundSetter
+    public void setExcludedRepositories(String excludedRepositories) {
+        this.excludedRepositories = Util.fixEmptyAndTrim(excludedRepositories);
+    }
+
+    @Exported
+    public String getIncludedPaths() {
+        return includedPaths;
+    }
+
+    @DataBoundSetter
+    public void setIncludedPaths(String includedPaths) {
+        this.includedPaths = Util.fixEmptyAndTrim(includedPaths);
+    }
+
+    @Exported
+    public String getExcludedPaths() {
+        return excludedPaths;
+    }
+
+    @DataBoundSetter
+    public void setExcludedPaths(String excludedPaths) {
+        this.excludedPaths = Util.fixEmptyAndTrim(excludedPaths);
+    }
+
+    @Exported
+    public String getExcludedUsers() {
+        return excludedUsers;
+    }
+
+    @DataBoundSetter
+    public void setExcludedUsers(String excludedUsers) {
+        this.excludedUsers = Util.fixEmptyAndTrim(excludedUsers);
+    }
+
+    @Exported
+    public String getExcludedMessages() {
+        return excludedMessages;
+    }
+
+    @DataBoundSetter
+    public void setExcludedMessages(String excludedMessages) {
+        this.excludedMessages = Util.fixEmptyAndTrim(excludedMessages);
+    }
+
     @SuppressWarnings("WeakerAccess") // Access needed for Stapler
     public String getCredentialsId() {
         return credentialsId;
@@ -398,9 +667,13 @@ public final class SurroundSCM extends SCM implements Serializable {
             @Nullable Launcher launcher, @Nonnull TaskListener listener) throws IOException, InterruptedException {
         SimpleDateFormat scm_datetime_formatter = new SimpleDateFormat(SURROUND_DATETIME_FORMAT_STR);
 
-        final Date lastBuildDate = build.getTime();
-        final int lastBuildNum = build.getNumber();
-        SurroundSCMRevisionState scmRevisionState = new SurroundSCMRevisionState(lastBuildDate, lastBuildNum);
+        // Prefer the state recorded by checkout, it carries the server's high-water mark.
+        SurroundSCMRevisionState scmRevisionState = build.getAction(SurroundSCMRevisionState.class);
+        if (scmRevisionState == null) {
+            final Date lastBuildDate = build.getTime();
+            final int lastBuildNum = build.getNumber();
+            scmRevisionState = new SurroundSCMRevisionState(lastBuildDate, lastBuildNum);
+        }
         listener.getLogger()
                 .println("calcRevisionsFromBuild determined revision for build #" + scmRevisionState.getBuildNumber()
                         + " built originally at " + scm_datetime_formatter.format(scmRevisionState.getDate())
@@ -410,19 +683,17 @@ public final class SurroundSCM extends SCM implements Serializable {
     }
 
     /**
-     * We don't actually NEED a workspace for polling. We are saving our info to a
-     * system temp file, further the way we are currently working (saving the info
-     * to a system temp file) is a bit daft since we could just directly read the
-     * command output rather than saving it to a file.
+     * We don't actually NEED a workspace for polling, the 'sscm cc' output is read straight into memory. Jobs that
+     * enable {@link #isPollWithoutWorkspace()} poll on the controller (or the configured polling node) so that an
+     * offline agent does not block polling and no executor is pinned for it.
      * <p>
-     * However, we have relied on this to be set to 'True' since we started coding,
-     * and when I tried to turn it off, stuff broke. Maybe we can try again later?
+     * Everybody else keeps the historical behavior of polling inside the last build's workspace.
      *
-     * @return Returns 'True' {@inheritDoc}
+     * @return Returns 'False' when workspace-less polling is enabled {@inheritDoc}
      */
     @Override
     public boolean requiresWorkspaceForPolling() {
-        return true;
+        return !pollWithoutWorkspace;
     }
 
     @Override
@@ -439,27 +710,56 @@ public final class SurroundSCM extends SCM implements Serializable {
             throws IOException, InterruptedException {
         SimpleDateFormat scm_datetime_formatter = new SimpleDateFormat(SURROUND_DATETIME_FORMAT_STR);
 
-        Date lastBuild = ((SurroundSCMRevisionState) baseline).getDate();
+        Date lastBuild = ((SurroundSCMRevisionState) baseline).getChangesSince();
         int lastBuildNum = ((SurroundSCMRevisionState) baseline).getBuildNumber();
 
         Date now = new Date();
-        File temporaryFile = File.createTempFile("changes", "txt");
 
-        listener.getLogger().println("Calculating changes since build #" + lastBuildNum + " which happened at "
+        listener.getLogger().println("Calculating changes since build #" + lastBuildNum + " starting at "
                 + scm_datetime_formatter.format(lastBuild) + " pluginVer: " + pluginVersion);
 
-        double countChanges = 0;
-        if (launcher != null)
-            countChanges = determineChangeCount(project, launcher, listener, lastBuild, now, temporaryFile, workspace);
-        else
-            listener.getLogger().println("Launcher was null... skipping determining change count.");
+        if (workspace == null && pollWithoutWorkspace) {
+            Node node = resolvePollingNode(listener);
+            FilePath rootPath = node.getRootPath();
+            if (rootPath == null && node != Jenkins.get()) {
+                // ex. the agent went offline after it was resolved
+                listener.getLogger().println("Polling node [" + node.getDisplayName()
+                        + "] has no root path, polling on the controller instead.");
+                node = Jenkins.get();
+                rootPath = node.getRootPath();
+            }
+            if (rootPath == null) {
+                throw new AbortException("No node to poll without a workspace on");
+            }
+            workspace = rootPath.child("sscm-polling");
+            launcher = node.createLauncher(listener);
+            listener.getLogger().println("Polling without a workspace on node [" + node.getDisplayName() + "]");
+        }
 
-        if (!temporaryFile.delete()) {
-            listener.getLogger().println("Failed to delete temporary file [" + temporaryFile.getAbsolutePath()
-                    + "] marking the file to be deleted when Jenkins restarts.");
-            temporaryFile.deleteOnExit();
+        SurroundSCMPollScheduler scheduler = SurroundSCMPollScheduler.get();
+        String pollingKey = project.getFullName();
+        if (adaptivePolling && !scheduler.isDue(pollingKey, now.getTime())) {
+            listener.getLogger().println("Adaptive polling: repository is quiet, next query due at "
+                    + scm_datetime_formatter.format(new Date(scheduler.getNextDueAt(pollingKey))));
+            return PollingResult.NO_CHANGES;
         }
 
+        double countChanges = 0;
+        if (launcher != null) {
+            long startedAt = System.currentTimeMillis();
+            boolean changed = false;
+            try {
+                countChanges = determineChangeCount(project, launcher, listener, lastBuild, now, workspace);
+                changed = countChanges > 0;
+            } finally {
+                if (adaptivePolling) {
+                    // Failed queries back off like quiet ones.
+                    scheduler.record(pollingKey, startedAt, System.currentTimeMillis() - startedAt, changed);
+                }
+            }
+        } else
+            listener.getLogger().println("Launcher was null... skipping determining change count.");
+
         if (countChanges == 0)
             return PollingResult.NO_CHANGES;
         else if (countChanges < changesThreshold)
@@ -468,6 +768,27 @@ public final class SurroundSCM extends SCM implements Serializable {
         return PollingResult.BUILD_NOW;
     }
 
+    /**
+     * Finds the node used for workspace-less polling. Falls back to the controller when no polling node is
+     * configured or when the configured node is not online.
+     *
+     * @param listener Listener used for logging
+     * @return Returns the node 'sscm cc' should run on
+     */
+    @Nonnull
+    private Node resolvePollingNode(@Nonnull TaskListener listener) {
+        Jenkins jenkins = Jenkins.get();
+        if (pollingNode != null) {
+            Node node = jenkins.getNode(pollingNode);
+            Computer computer = node != null ? node.toComputer() : null;
+            if (computer != null && computer.isOnline()) {
+                return node;
+            }
+            listener.getLogger().println("Polling node [" + pollingNode + "] is not available, polling on the controller instead.");
+        }
+        return jenkins;
+    }
+
     /**
      * Obtains a fresh workspace of the module(s) into the specified directory of
      * the specified machine. We'll use sscm get.
@@ -491,46 +812,583 @@ public final class SurroundSCM extends SCM implements Serializable {
             EnvVarsUtils.overrideAll(environment, ((AbstractBuild) build).getBuildVariables());
         }
 
+        Date lastBuildDate = new Date();
+        lastBuildDate.setTime(0); // default to January 1, 1970
+        Date lastChangeDate = null;
+        SurroundSCMRevisionState previousState = null;
+
+        boolean skipChangelog = false;
+        if (baseline instanceof SurroundSCMRevisionState) {
+            previousState = (SurroundSCMRevisionState) baseline;
+            lastBuildDate = previousState.getChangesSince();
+            lastChangeDate = previousState.getLastChangeDate();
+        } else {
+            listener.getLogger().println("No previous build information detected.");
+            Date firstBuildChangesSince = getFirstBuildChangesSince(listener, currentDate);
+            if (firstBuildChangesSince != null) {
+                lastBuildDate = firstBuildChangesSince;
+            } else {
+                skipChangelog = true;
+            }
+        }
+
+        // With the summary, sscm's per file lines go to a side file and the log only gets counts. Both are only
+        // created once a get runs.
+        TaskListener getListener = listener;
+        SurroundSCMGetOutputFilter outputFilter = null;
+
+        SurroundSCMChangeRecord.NewestDateTracker tracker = new SurroundSCMChangeRecord.NewestDateTracker();
+        boolean changelogCaptured = false;
+        boolean changesQueried = false;
+        Integer cmdResult = null;
+        try {
+            if ((incrementalCheckout || skipUnchangedCheckout) && previousState != null
+                    && isWorkspaceIntact(workspace, previousState, listener)) {
+                // The changelog doubles as the list of files to update, so it has to run first.
+                SurroundSCMChangeRecord.Collector changes = new SurroundSCMChangeRecord.Collector(INCREMENTAL_MAX_FILES);
+                try {
+                    changelogCaptured = captureChangeLog(build, launcher, workspace, listener, lastBuildDate,
+                            currentDate, changelogFile, environment, new ForkOutputStream(tracker, changes));
+                    changesQueried = changelogCaptured;
+                } finally {
+                    changes.close();
+                }
+                if (changelogCaptured && incrementalCheckout) {
+                    outputFilter = createOutputFilter(build, listener);
+                    if (outputFilter != null) {
+                        getListener = new StreamTaskListener(outputFilter, StandardCharsets.UTF_8);
+                    }
+                    cmdResult = incrementalGet(build, launcher, workspace, getListener, environment, currentDate, changes);
+                } else if (changelogCaptured && !changes.isOverflow() && !hasChangesInScope(changes.getRecords())
+                        && (verifyWorkspace || verifyManifest(workspace, listener))) {
+                    // Nothing else would notice files deleted or modified since the baseline build.
+                    listener.getLogger().println("No changes since build #" + previousState.getBuildNumber()
+                            + " and the workspace is unchanged, skipping the get.");
+                    cmdResult = 0;
+                }
+            }
+
+            if (cmdResult == null) {
+                if (outputFilter == null) {
+                    outputFilter = createOutputFilter(build, listener);
+                    if (outputFilter != null) {
+                        getListener = new StreamTaskListener(outputFilter, StandardCharsets.UTF_8);
+                    }
+                }
+
+                // The changelog window is known up front, so the 'cc' runs while the get does.
+                SurroundSCMBackgroundTask<Boolean> changelog = null;
+                if (skipChangelog && changelogFile != null) {
+                    new FileOutputStream(changelogFile).close(); // an empty changelog
+                } else if (!changelogCaptured && changelogFile != null) {
+                    final Date changesSince = lastBuildDate;
+                    changelog = SurroundSCMBackgroundTask.submit(Computer.threadPoolForRemoting,
+                            "Capturing the changelog", () -> captureChangeLog(build, launcher, workspace, listener,
+                                    changesSince, currentDate, changelogFile, environment, tracker));
+                }
+                SurroundSCMBackgroundTask<SurroundSCMRepositoryListing> manifestListing = null;
+                try {
+                    // Exclusions and splitting the work need to know the files of the repository before the get.
+                    SurroundSCMRepositoryListing listing = null;
+                    if (getScope().hasExclusions() || getParallelism(workspace) > 1) {
+                        listing = listRepository(build, launcher, workspace, listener, environment, currentDate);
+                    } else if (isManifestMaintained()) {
+                        // The manifest only needs them afterwards, and the listing is of the get's snapshot.
+                        manifestListing = SurroundSCMBackgroundTask.submit(Computer.threadPoolForRemoting,
+                                "Listing the repository", () -> listRepository(build, launcher, workspace, listener,
+                                        environment, currentDate));
+                    }
+
+                    SurroundSCMSnapshotCache cache = SurroundSCMSnapshotCache.forWorkspace(workspace);
+                    cmdResult = cache != null ? cachedGet(build, launcher, workspace, getListener, environment, currentDate, listing, cache)
+                            : fullGet(build, launcher, workspace, workspace, getListener, environment, currentDate, listing);
+                    if (cmdResult == 0 && isManifestMaintained()) {
+                        if (manifestListing != null) {
+                            listing = manifestListing.join();
+                            manifestListing = null;
+                        }
+                        if (listing != null) {
+                            SurroundSCMWorkspaceManifest.write(workspace, getManifestFiles(listing));
+                        } else {
+                            SurroundSCMWorkspaceManifest.delete(workspace);
+                        }
+                    }
+                } finally {
+                    if (manifestListing != null) {
+                        manifestListing.abandon(); // the get failed, the listing is not used
+                    }
+                    if (changelog != null) {
+                        changesQueried = joinChangeLog(changelog, cmdResult != null && cmdResult == 0, changelogFile);
+                    }
+                }
+            }
+        } finally {
+            tracker.close();
+            if (outputFilter != null) {
+                getListener.getLogger().flush();
+                outputFilter.close();
+            }
+        }
+
+        if (cmdResult == 0) {
+            lastChangeDate = SurroundSCMRevisionState.nextLastChangeDate(lastChangeDate, tracker.getNewestDate(),
+                    changesQueried);
+
+            // Setup the revision state based on what the server reported.
+            SurroundSCMRevisionState scmRevisionState = new SurroundSCMRevisionState(currentDate, build.number,
+                    lastChangeDate);
+            build.addAction(scmRevisionState);
+            new SurroundSCMWorkspaceState(getCheckoutKey(), currentDate.getTime(), build.number).save(workspace);
+            if (changelogFile != null && changelogFile.isFile()) {
+                try {
+                    SurroundSCMChangeLogParser.writeIndex(changelogFile);
+                } catch (IOException e) {
+                    // The changelog is parsed in full instead.
+                    listener.getLogger().println("Could not index the changelog: " + e.getMessage());
+                }
+            }
+            listener.getLogger()
+                    .println("Checkout calculated ScmRevisionState for build #" + build.number + " to be the datetime "
+                            + scm_datetime_formatter.format(currentDate)
+                            + (lastChangeDate != null ? " with newest change at " + scm_datetime_formatter.format(lastChangeDate) : "")
+                            + " pluginVer: " + pluginVersion);
+        } else {
+            // Whatever is in the workspace now can't be trusted for an incremental update.
+            SurroundSCMWorkspaceState.clear(workspace);
+        }
+
+        listener.getLogger().println("Checkout completed.");
+    }
+
+    /**
+     * Applies the first build changelog policy.
+     *
+     * @param listener    Listener used for logging
+     * @param currentDate The current build's date time
+     * @return Returns the start of the changelog window for a build without baseline, or null for no changelog.
+     */
+    @CheckForNull
+    private Date getFirstBuildChangesSince(@Nonnull TaskListener listener, @Nonnull Date currentDate) {
+        SimpleDateFormat scm_datetime_formatter = new SimpleDateFormat(SURROUND_DATETIME_FORMAT_STR);
+        switch (getFirstBuildChangelog()) {
+            case NONE:
+                listener.getLogger().println("First build: not capturing a changelog.");
+                return null;
+            case PARENT:
+                Date parentBuildDate = findParentBranchBuildDate();
+                if (parentBuildDate != null) {
+                    listener.getLogger().println("First build: changelog since the last build of parent branch "
+                            + getParentBranch() + " at " + scm_datetime_formatter.format(parentBuildDate));
+                    return parentBuildDate;
+                }
+                listener.getLogger().println("First build: no build of parent branch " + getParentBranch()
+                        + " found, using the lookback window.");
+                // fall through
+            case LOOKBACK:
+                Date since = new Date(currentDate.getTime() - TimeUnit.DAYS.toMillis(getFirstBuildLookbackDays()));
+                listener.getLogger().println("First build: changelog of the last " + getFirstBuildLookbackDays()
+                        + " days, since " + scm_datetime_formatter.format(since));
+                return since;
+            default:
+                return new Date(0);
+        }
+    }
+
+    /**
+     * @return Returns the revision state date of the newest build of a job building the same repository (or a parent
+     *         repository) on the parent branch, or null if there is none.
+     */
+    @CheckForNull
+    private Date findParentBranchBuildDate() {
+        String parent = getParentBranch();
+        if (parent == null) {
+            return null;
+        }
+        Date newest = null;
+        try (ACLContext ctx = ACL.as(ACL.SYSTEM)) {
+            for (String fullName : SurroundSCMJobIndex.findJobs(server, serverPort, parent, repository)) {
+                Job<?, ?> job = Jenkins.get().getItemByFullName(fullName, Job.class);
+                Run<?, ?> run = job != null ? job.getLastCompletedBuild() : null;
+                // Only look back a few builds, a build without checkout (ex. aborted early) has no state.
+                for (int i = 0; run != null && i < 10; i++, run = run.getPreviousCompletedBuild()) {
+                    SurroundSCMRevisionState state = run.getAction(SurroundSCMRevisionState.class);
+                    if (state != null) {
+                        if (newest == null || state.getDate().after(newest)) {
+                            newest = state.getDate();
+                        }
+                        break;
+                    }
+                }
+            }
+        }
+        return newest;
+    }
+
+    /**
+     * Waits for a changelog capture started next to the get.
+     *
+     * @param changelog     The running capture
+     * @param needed        'false' if the get failed, the capture is then stopped since the changelog is not used
+     * @param changelogFile The file the capture writes to, it is emptied once a stopped capture has ended
+     * @return Returns 'true' if the capture finished and sscm succeeded
+     */
+    private static boolean joinChangeLog(@Nonnull SurroundSCMBackgroundTask<Boolean> changelog, boolean needed,
+                                         @Nonnull File changelogFile) throws IOException, InterruptedException {
+        if (needed) {
+            return Boolean.TRUE.equals(changelog.join());
+        }
+        // The capture may still be writing the file and the tracker, which are closed right after this.
+        changelog.abandon();
+        new FileOutputStream(changelogFile).close();
+        return false;
+    }
+
+    /**
+     * Brings the node's cache directory of this repository up to date with a full get, then populates the workspace
+     * from it.
+     *
+     * @return Returns the exit code of sscm
+     */
+    private int cachedGet(@Nonnull Run<?, ?> build, @Nonnull Launcher launcher, @Nonnull FilePath workspace,
+                          @Nonnull TaskListener listener, @Nonnull EnvVars environment, @Nonnull Date snapshot,
+                          @CheckForNull SurroundSCMRepositoryListing listing, @Nonnull SurroundSCMSnapshotCache cache) throws IOException, InterruptedException {
+        String key = getCheckoutKey();
+        SurroundSCMSnapshotCache.KeyLock lock = cache.lock(key);
+        try {
+            FilePath directory = cache.getDirectory(key);
+            listener.getLogger().println("Updating the node's Surround SCM cache in " + directory.getRemote());
+            int cmdResult = fullGet(build, launcher, workspace, directory, listener, environment, snapshot, listing);
+            if (cmdResult != 0) {
+                return cmdResult;
+            }
+            long populated = cache.populate(key, workspace);
+            listener.getLogger().println("Populated the workspace from the cache, " + populated + " files updated.");
+        } finally {
+            lock.unlock();
+        }
+        cache.evict(key, listener.getLogger());
+        return 0;
+    }
+
+    /**
+     * Runs a recursive 'sscm get' of the whole repository.
+     *
+     * @param workspace   Workspace of the build
+     * @param destination Directory to get into, the workspace or a cache directory on the same node
+     * @param snapshot    Date to get the files as of
+     * @param listing     Listing of the repository, required for exclusions and to split the work
+     * @return Returns the exit code of sscm
+     */
+    private int fullGet(@Nonnull Run<?, ?> build, @Nonnull Launcher launcher, @Nonnull FilePath workspace,
+                        @Nonnull FilePath destination, @Nonnull TaskListener listener, @Nonnull EnvVars environment,
+                        @Nonnull Date snapshot, @CheckForNull SurroundSCMRepositoryListing listing)
+            throws IOException, InterruptedException {
+        String sscmExe = getSscmExe(workspace, listener, environment);
+        String serverArgument = getServerConnectionArgument(build.getParent(), environment, workspace);
+        String userPasswordArgument = getUserPasswordArgument(build.getParent(), environment);
+
+        int parallelism = getParallelism(workspace);
+        SurroundSCMRepositoryScope scope = getScope();
+        if (scope.isEmpty() && parallelism <= 1) {
+            ArgumentListBuilder cmd = createGetCommand(sscmExe, repository, destination, Collections.singletonList("/"),
+                    true, snapshot, serverArgument, userPasswordArgument);
+
+            return launcher.launch().envs(environment).cmds(cmd).stdout(listener.getLogger()).join();
+        }
+
+        if (scope.hasExclusions() && listing == null) {
+            listener.fatalError("Can't skip the excluded repositories without a listing of the repository.");
+            return 1;
+        }
+
+        List<SurroundSCMRepositoryScope.Get> gets = scope.plan(listing);
+        if (parallelism > 1 && listing != null) {
+            gets = SurroundSCMRepositoryScope.split(gets, listing);
+        }
+
+        Map<String, SurroundSCMRepositoryScope.Get> getsByName = new HashMap<>();
+        Map<String, Long> weights = new HashMap<>();
+        for (SurroundSCMRepositoryScope.Get get : gets) {
+            getsByName.put(get.toString(), get);
+            weights.put(get.toString(), get.getWeight());
+        }
+
+        List<List<ArgumentListBuilder>> groups = new ArrayList<>();
+        for (List<String> group : SurroundSCMRepositoryListing.partition(weights, Math.max(1, parallelism))) {
+            List<ArgumentListBuilder> commands = new ArrayList<>();
+            for (String name : group) {
+                SurroundSCMRepositoryScope.Get get = getsByName.get(name);
+                String getRepository = get.getPath().isEmpty() ? repository : repository + "/" + get.getPath();
+                FilePath getDestination = get.getPath().isEmpty() ? destination : destination.child(get.getPath());
+                commands.add(createGetCommand(sscmExe, getRepository, getDestination, Collections.singletonList("/"),
+                        get.isRecursive(), snapshot, serverArgument, userPasswordArgument));
+            }
+            groups.add(commands);
+        }
+
+        listener.getLogger().println("Checking out " + gets + " with " + groups.size() + " processes.");
+        if (groups.size() > 1) {
+            return new SurroundSCMParallelCheckout(launcher, environment, listener.getLogger()).run(groups);
+        }
+        for (List<ArgumentListBuilder> group : groups) {
+            for (ArgumentListBuilder cmd : group) {
+                int cmdResult = launcher.launch().envs(environment).cmds(cmd).stdout(listener.getLogger()).join();
+                if (cmdResult != 0) {
+                    return cmdResult;
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Runs a recursive 'sscm ls' of the repository.
+     *
+     * @param snapshot Date to list the files as of, the same date the get uses
+     * @return Returns the listing, or null if sscm failed
+     */
+    @CheckForNull
+    private SurroundSCMRepositoryListing listRepository(@Nonnull Run<?, ?> build, @Nonnull Launcher launcher,
+                                                        @Nonnull FilePath workspace, @Nonnull TaskListener listener,
+                                                        @Nonnull EnvVars environment, @Nonnull Date snapshot)
+            throws IOException, InterruptedException {
+        ArgumentListBuilder cmd = createListCommand(getSscmExe(workspace, listener, environment), snapshot,
+                getServerConnectionArgument(build.getParent(), environment, workspace),
+                getUserPasswordArgument(build.getParent(), environment));
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        int lsResult = launcher.launch().envs(environment).cmds(cmd).stdout(baos).join();
+        if (lsResult != 0) {
+            listener.getLogger().println("Listing the repository failed with exit code " + lsResult + ".");
+            return null;
+        }
+        return SurroundSCMRepositoryListing.parse(repository, baos.toString("UTF-8"));
+    }
+
+    /**
+     * @return Returns the filter that moves the per file lines of 'sscm get' to a side file of the build, or null if
+     *         the output is not summarized.
+     */
+    @CheckForNull
+    private SurroundSCMGetOutputFilter createOutputFilter(@Nonnull Run<?, ?> build, @Nonnull TaskListener listener)
+            throws IOException {
+        if (!bIncludeOutput || !summarizeOutput) {
+            return null;
+        }
+        File rawOutput = new File(build.getRootDir(), RAW_GET_OUTPUT_FILE);
+        return new SurroundSCMGetOutputFilter(listener.getLogger(),
+                new GZIPOutputStream(new FileOutputStream(rawOutput)), rawOutput.getName());
+    }
+
+    /**
+     * @return Returns the number of concurrent 'sscm get' processes for a full get into the workspace.
+     */
+    private int getParallelism(@Nonnull FilePath workspace) {
+        int parallelism = parallelCheckout;
+        SurroundSCMNodeProperty nodeProperty = SurroundSCMNodeProperty.forWorkspace(workspace);
+        if (nodeProperty != null && nodeProperty.getMaxParallelCheckout() > 0) {
+            parallelism = Math.min(parallelism, nodeProperty.getMaxParallelCheckout());
+        }
+        return parallelism;
+    }
+
+    /**
+     * @return Returns 'true' if checkout keeps a {@link SurroundSCMWorkspaceManifest}, which is only read by the
+     *         incremental and skip paths.
+     */
+    private boolean isManifestMaintained() {
+        return incrementalCheckout || skipUnchangedCheckout || verifyWorkspace;
+    }
+
+    /**
+     * @return Returns the files of the listing that are in scope, relative to the workspace, with their versions.
+     */
+    private Map<String, String> getManifestFiles(@Nonnull SurroundSCMRepositoryListing listing) {
+        SurroundSCMRepositoryScope scope = getScope();
+        Map<String, String> files = new HashMap<>();
+        for (Map.Entry<String, String> file : listing.getFiles().entrySet()) {
+            int slash = file.getKey().lastIndexOf('/');
+            if (scope.contains(slash < 0 ? "" : file.getKey().substring(0, slash))) {
+                files.put(file.getKey(), file.getValue());
+            }
+        }
+        return files;
+    }
+
+    /**
+     * @param snapshot Date to list the files as of, see {@link #createGetCommand}
+     * @return Returns a recursive 'sscm ls' of the repository, see {@link SurroundSCMRepositoryListing}.
+     */
+    private ArgumentListBuilder createListCommand(String sscmExe, Date snapshot, String serverArgument,
+                                                  String userPasswordArgument) {
         ArgumentListBuilder cmd = new ArgumentListBuilder();
-        cmd.add(getSscmExe(workspace, listener, environment));// will default to sscm user can put in path
-        cmd.add("get");
-        cmd.add("/");
-        cmd.add("-wreplace");
+        cmd.add(sscmExe);
+        cmd.add("ls");
         cmd.add("-b".concat(branch));
         cmd.add("-p".concat(repository));
-        cmd.add("-d".concat(workspace.getRemote()));
         cmd.add("-r");
-        cmd.add("-a1"); // for now hardcoded: get latest version in state <No State>
-        // cmd.add("-s" + scm_datetime_formatter.format(currentDate));
-        if (!bIncludeOutput) {
-            cmd.add("-q");
+        // The listing has to match what the get put into the workspace, not what was checked in since.
+        cmd.add("-s" + new SimpleDateFormat(SURROUND_DATETIME_FORMAT_STR_2).format(snapshot));
+        cmd.add(serverArgument);
+        cmd.addMasked(userPasswordArgument);
+        return cmd;
+    }
+
+    /**
+     * Updates the workspace with just the files in the changelog: removed files are deleted, everything else is
+     * fetched with non-recursive 'sscm get's per repository, as few as the command line length allows.
+     *
+     * @param changes Records of the changelog 'cc' for the window since the baseline
+     * @return Returns the exit code of sscm, or null if the changes can't be applied incrementally and a full get is
+     *         required (too many changes, renames/moves/shares, records outside of the repository).
+     */
+    @CheckForNull
+    private Integer incrementalGet(@Nonnull Run<?, ?> build, @Nonnull Launcher launcher, @Nonnull FilePath workspace,
+                                   @Nonnull TaskListener listener, @Nonnull EnvVars environment, @Nonnull Date snapshot,
+                                   @Nonnull SurroundSCMChangeRecord.Collector changes) throws IOException, InterruptedException {
+        SurroundSCMIncrementalPlan plan = SurroundSCMIncrementalPlan.plan(repository, getScope(), changes.getRecords(),
+                changes.isOverflow(), INCREMENTAL_MAX_FILES);
+        if (plan.isFullGetRequired()) {
+            listener.getLogger().println(plan.getFullGetReason() + ", doing a full get.");
+            return null;
         }
-        cmd.add(getServerConnectionArgument(build.getParent(), environment, workspace));
-        cmd.addMasked(getUserPasswordArgument(build.getParent(), environment));
 
-        int cmdResult = launcher.launch().envs(environment).cmds(cmd).stdout(listener.getLogger()).join();
-        if (cmdResult == 0) {
-            Date lastBuildDate = new Date();
-            lastBuildDate.setTime(0); // default to January 1, 1970
+        int deleted = 0;
+        for (String relativePath : plan.getDeletedFiles()) {
+            FilePath file = workspace.child(relativePath);
+            if (file.isDirectory()) {
+                file.deleteRecursive();
+                deleted++;
+            } else if (file.exists()) {
+                file.delete();
+                deleted++;
+            }
+        }
 
-            if (baseline instanceof SurroundSCMRevisionState) {
-                lastBuildDate = ((SurroundSCMRevisionState) baseline).getDate();
-            } else
-                listener.getLogger().print("No previous build information detected.");
+        listener.getLogger().println("Incremental checkout: getting " + plan.getUpdatedFiles().size()
+                + " changed files from " + plan.getFilesByRepository().size() + " repositories, deleted " + deleted
+                + " removed files.");
+
+        String sscmExe = getSscmExe(workspace, listener, environment);
+        String serverArgument = getServerConnectionArgument(build.getParent(), environment, workspace);
+        String userPasswordArgument = getUserPasswordArgument(build.getParent(), environment);
+        for (Map.Entry<String, List<String>> entry : plan.getFilesByRepository().entrySet()) {
+            FilePath destination = getLocalDirectory(workspace, entry.getKey());
+            destination.mkdirs();
+            for (List<String> fileNames : SurroundSCMIncrementalPlan.split(entry.getValue(), INCREMENTAL_MAX_COMMAND_CHARS)) {
+                ArgumentListBuilder cmd = createGetCommand(sscmExe, entry.getKey(), destination, fileNames, false,
+                        snapshot, serverArgument, userPasswordArgument);
+                int cmdResult = launcher.launch().envs(environment).cmds(cmd).stdout(listener.getLogger()).join();
+                if (cmdResult != 0) {
+                    return cmdResult;
+                }
+            }
+        }
+        SurroundSCMWorkspaceManifest.update(workspace, plan.getUpdatedFiles(), plan.getDeletedFiles());
+        return 0;
+    }
 
-            // Setup the revision state based on what we KNOW to be correct information.
-            SurroundSCMRevisionState scmRevisionState = new SurroundSCMRevisionState(currentDate, build.number);
-            build.addAction(scmRevisionState);
-            listener.getLogger()
-                    .println("Checkout calculated ScmRevisionState for build #" + build.number + " to be the datetime "
-                            + scm_datetime_formatter.format(currentDate) + " pluginVer: " + pluginVersion);
+    /**
+     * Checks the workspace metadata to see if the workspace still holds what the baseline build checked out.
+     */
+    private boolean isWorkspaceIntact(@Nonnull FilePath workspace, @Nonnull SurroundSCMRevisionState baseline,
+                                      @Nonnull TaskListener listener) throws IOException, InterruptedException {
+        SurroundSCMWorkspaceState state = SurroundSCMWorkspaceState.load(workspace);
+        if (state == null) {
+            listener.getLogger().println("No Surround SCM workspace state found, doing a full get.");
+            return false;
+        }
+        if (!state.matches(getCheckoutKey(), baseline)) {
+            listener.getLogger().println("Workspace was last checked out by build #" + state.getBuildNumber()
+                    + ", not the baseline build #" + baseline.getBuildNumber() + ", doing a full get.");
+            return false;
+        }
+        return !verifyWorkspace || verifyManifest(workspace, listener);
+    }
+
+    /**
+     * Checks the workspace files against the manifest written by the last checkout.
+     *
+     * @return Returns 'true' if there is a manifest and every file in it is present and unmodified.
+     */
+    private boolean verifyManifest(@Nonnull FilePath workspace, @Nonnull TaskListener listener)
+            throws IOException, InterruptedException {
+        long startedAt = System.currentTimeMillis();
+        SurroundSCMWorkspaceManifest.Verification verification = SurroundSCMWorkspaceManifest.verify(workspace);
+        if (!verification.isFound()) {
+            listener.getLogger().println("No workspace manifest found, doing a full get.");
+            return false;
+        }
+        listener.getLogger().println("Verified " + verification.getChecked() + " files against the workspace manifest in "
+                + (System.currentTimeMillis() - startedAt) + " ms.");
+        if (!verification.isIntact()) {
+            listener.getLogger().println(verification.getMismatched() + " files are missing or modified (ex. "
+                    + verification.getSample() + "), doing a full get.");
+            return false;
+        }
+        return true;
+    }
 
-            if (changelogFile != null)
-                captureChangeLog(build, launcher, workspace, listener, lastBuildDate, currentDate, changelogFile,
-                        environment);
+    private boolean hasChangesInScope(List<SurroundSCMChangeRecord> changes) {
+        SurroundSCMRepositoryScope scope = getScope();
+        for (SurroundSCMChangeRecord change : changes) {
+            if (scope.isEmpty() || scope.contains(change, repository)) {
+                return true;
+            }
         }
+        return false;
+    }
 
-        listener.getLogger().println("Checkout completed.");
+    /**
+     * @param fullRepository A repository path as reported by sscm
+     * @return Returns the path relative to the configured repository ("" for the repository itself), or null if it
+     *         is not below the configured repository.
+     */
+    @CheckForNull
+    private String getRelativeRepository(String fullRepository) {
+        return SurroundSCMIncrementalPlan.getRelativeRepository(repository, fullRepository);
+    }
+
+    private FilePath getLocalDirectory(FilePath workspace, String fullRepository) {
+        String relative = getRelativeRepository(fullRepository);
+        return relative == null || relative.isEmpty() ? workspace : workspace.child(relative);
+    }
+
+    /**
+     * Builds an 'sscm get' command.
+     *
+     * @param sscmExe              Path to the sscm executable
+     * @param getRepository        Repository to get the items from
+     * @param destination          Local directory matching the repository
+     * @param items                Items to get, "/" for everything in the repository
+     * @param recursive            Whether to also get the sub-repositories
+     * @param snapshot             Date to get the files as of, the same date the revision state and changelog use
+     * @param serverArgument       Server connection argument, see {@link #getServerConnectionArgument(Job, EnvVars, FilePath)}
+     * @param userPasswordArgument Username // password argument, it will be masked
+     * @return Returns the 'get' command
+     */
+    private ArgumentListBuilder createGetCommand(String sscmExe, String getRepository, FilePath destination,
+                                                 List<String> items, boolean recursive, Date snapshot,
+                                                 String serverArgument, String userPasswordArgument) {
+        ArgumentListBuilder cmd = new ArgumentListBuilder();
+        cmd.add(sscmExe);// will default to sscm user can put in path
+        cmd.add("get");
+        cmd.add(items);
+        cmd.add("-wreplace");
+        cmd.add("-b".concat(branch));
+        cmd.add("-p".concat(getRepository));
+        cmd.add("-d".concat(destination.getRemote()));
+        if (recursive) {
+            cmd.add("-r");
+        }
+        cmd.add("-a1"); // for now hardcoded: get latest version in state <No State>
+        // Files checked in while the get runs are left for the next build, which the changelog and polling expect.
+        cmd.add("-s" + new SimpleDateFormat(SURROUND_DATETIME_FORMAT_STR_2).format(snapshot));
+        if (!bIncludeOutput) {
+            cmd.add("-q");
+        }
+        cmd.add(serverArgument);
+        cmd.addMasked(userPasswordArgument);
+        return cmd;
     }
 
     public void saveCredentialsAndExeForBlames(@Nonnull Run<?, ?> build, @Nonnull EnvVars environment,
@@ -685,8 +1543,23 @@ public final class SurroundSCM extends SCM implements Serializable {
     @Nonnull
     @Override
     public String getKey() {
+        return createKey(getServer(), getServerPort(), getBranch(), getRepository());
+    }
+
+    /**
+     * Builds the same key as {@link #getKey()} from its parts, so other components (ex. the notifyCommit endpoint) can
+     * find the SCMs matching a server, branch and repository.
+     *
+     * @param server     Server name
+     * @param serverPort Server port
+     * @param branch     Branch name
+     * @param repository Repository path
+     * @return Returns the digest of sscm://Server:Port//Branch//Repository
+     */
+    @Nonnull
+    public static String createKey(String server, String serverPort, String branch, String repository) {
         // Key=sscm://Server:Port//Branch//Repository
-        String unsafeString = String.format("sscm://%s:%s//%s//%s", getServer(), getServerPort(), getBranch(), getRepository());
+        String unsafeString = String.format("sscm://%s:%s//%s//%s", server, serverPort, branch, repository);
         return Util.getDigestOf(unsafeString);
     }
 
@@ -708,61 +1581,64 @@ public final class SurroundSCM extends SCM implements Serializable {
      * @param listener      Listener used for logging
      * @param lastBuildDate The last build's date time
      * @param currentDate   The current build's date time
-     * @param changelogFile File to save the changelog too
+     * @param changelogFile File to save the changelog too, may be null if only the tracker needs the output
      * @param env           Environment variables to use
+     * @param tracker       Also receives the command output, ex. to find the newest change the server reported
      * @return Returns 'True' if we successfully captured the changelog
      * @throws IOException          Access to the files can cause an IOException
      * @throws InterruptedException Launcher can throw this when running the process
      */
     private boolean captureChangeLog(@Nonnull Run<?, ?> build, Launcher launcher, FilePath workspace,
-                                     TaskListener listener, Date lastBuildDate, Date currentDate, File changelogFile,
-                                     EnvVars env) throws IOException, InterruptedException {
+                                     TaskListener listener, Date lastBuildDate, Date currentDate,
+                                     @CheckForNull File changelogFile, EnvVars env, OutputStream tracker)
+            throws IOException, InterruptedException {
 
         boolean result = true;
 
-        SimpleDateFormat scm_datetime_formatter = new SimpleDateFormat(SURROUND_DATETIME_FORMAT_STR);
-
-        String dateRange = scm_datetime_formatter.format(lastBuildDate);
-        dateRange = dateRange.concat(":");
-        dateRange = dateRange.concat(scm_datetime_formatter.format(currentDate));
-
-        ArgumentListBuilder cmd = new ArgumentListBuilder();
-        cmd.add(getSscmExe(workspace, listener, env));//will default to sscm user can put in path
-        cmd.add("cc");
-        cmd.add("/");
-        cmd.add("-d".concat(dateRange));
-        cmd.add("-b".concat(branch));
-        cmd.add("-p".concat(repository));
-        cmd.add("-r");
+        ArgumentListBuilder cmd = createChangesCommand(getSscmExe(workspace, listener, env), getChangesRepository(), lastBuildDate, currentDate,
+                getServerConnectionArgument(build.getParent(), env, workspace),
+                getUserPasswordArgument(build.getParent(), env));
 
-        cmd.add(getServerConnectionArgument(build.getParent(), env, workspace));
-        cmd.addMasked(getUserPasswordArgument(build.getParent(), env));
-
-        FileOutputStream os = new FileOutputStream(changelogFile);
+        OutputStream bos = changelogFile != null ? new BufferedOutputStream(new FileOutputStream(changelogFile)) : null;
+        OutputStream changelog = bos;
         try {
-            BufferedOutputStream bos = new BufferedOutputStream(os);
-            Writer w = new OutputStreamWriter(new FileOutputStream(changelogFile), "UTF-8");
-            PrintWriter writer = new PrintWriter(w);
-            try {
-
-
-                int cmdResult = launcher.launch().cmds(cmd).envs(env).stdout(bos).join();
-                if (cmdResult != 0) {
-                    listener.fatalError("Changelog failed with exit code " + cmdResult);
-                    result = false;
-                }
-
-
-            } finally {
-                writer.close();
-                bos.close();
+            SurroundSCMRepositoryScope scope = getScope();
+            if (bos != null && !scope.isEmpty()) {
+                // Only records in scope make it into the changelog.
+                changelog = new SurroundSCMLineOutputStream() {
+                    private final SurroundSCMChangeLineTokenizer tokenizer = new SurroundSCMChangeLineTokenizer();
+
+                    @Override
+                    protected boolean onLine(String line) throws IOException {
+                        SurroundSCMChangeRecord record = SurroundSCMChangeRecord.parse(tokenizer, line);
+                        if (record == null || scope.contains(record, repository)) {
+                            bos.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+                        }
+                        return true;
+                    }
+                };
+            }
+            OutputStream stdout = changelog != null ? new ForkOutputStream(changelog, tracker) : tracker;
+            int cmdResult = launcher.launch().cmds(cmd).envs(env).stdout(stdout).join();
+            if (cmdResult != 0) {
+                listener.fatalError("Changelog failed with exit code " + cmdResult);
+                result = false;
             }
         } finally {
-            os.close();
+            if (changelog != bos) {
+                changelog.close(); // hands over the last line
+            }
+            if (bos != null) {
+                bos.close();
+            }
         }
 
-        listener.getLogger().println("Changelog calculated successfully.");
-        listener.getLogger().println("Change log file: " + changelogFile.getAbsolutePath());
+        if (result) {
+            listener.getLogger().println("Changelog calculated successfully.");
+        }
+        if (changelogFile != null) {
+            listener.getLogger().println("Change log file: " + changelogFile.getAbsolutePath());
+        }
 
         return result;
     }
@@ -775,83 +1651,185 @@ public final class SurroundSCM extends SCM implements Serializable {
      * @param listener      Listener to log the information
      * @param lastBuildDate Previous build date to use as the 'start' for the cruisecontrol command
      * @param currentDate   Current date to use as the 'end' for the cruisecontrol command
-     * @param changelogFile File to log the changes
      * @param workspace     Workspace to use to find 'Node' information (path to sscm)
      * @return Returns the # of files that have changed since the lastBuildDate
-     * @throws IOException          Throws this if it fails to access the changelogFile
+     * @throws IOException          Throws this if the launcher fails to start the command
      * @throws InterruptedException Throws this if the launcher fails to run successfully.
      */
     private double determineChangeCount(Job<?, ?> project, Launcher launcher, TaskListener listener, Date lastBuildDate,
-                                        Date currentDate, File changelogFile, FilePath workspace) throws IOException, InterruptedException {
-        SimpleDateFormat scm_datetime_formatter = new SimpleDateFormat(SURROUND_DATETIME_FORMAT_STR);
-
+                                        Date currentDate, FilePath workspace) throws IOException, InterruptedException {
         double changesCount = 0;
         if (server != null)
             listener.getLogger().println("in determine Change Count server: " + server);
 
-        String dateRange = scm_datetime_formatter.format(lastBuildDate);
-        dateRange = dateRange.concat(":");
-        dateRange = dateRange.concat(scm_datetime_formatter.format(currentDate));
-
         EnvVars env = project.getEnvironment(SSCMUtils.workspaceToNode(workspace), listener);
 
-        ArgumentListBuilder cmd = new ArgumentListBuilder();
-        cmd.add(getSscmExe(workspace, listener, null));
-        cmd.add("cc");
-        cmd.add("/");
-        cmd.add("-d".concat(dateRange));
-        cmd.add("-b".concat(branch));
-        cmd.add("-p".concat(repository));
-        cmd.add("-r");
-        cmd.add(getServerConnectionArgument(project, env, workspace));
-        cmd.addMasked(getUserPasswordArgument(project, env));
-
-        listener.getLogger().println("determineChangeCount executing the command: " + cmd.toString() + " with date range: [ " + dateRange + " ]");
-
-        // TODO: This seems like a stupid hack.  Why are we dumping command output to a text file? Can we guarantee
-        //       that the 'changelogFile' (a temp file on some machine) is at an accessible path wherever this is run?
-        //       why don't we just read the command output straight into memory & immediately process it?
-        FileOutputStream os = new FileOutputStream(changelogFile);
-        try {
-            BufferedOutputStream bos = new BufferedOutputStream(os);
+        String sscmExe = getSscmExe(workspace, listener, null);
+        String serverArgument = getServerConnectionArgument(project, env, workspace);
+        String userPasswordArgument = getUserPasswordArgument(project, env);
+
+        if (SurroundSCMPollCoordinator.isEnabled()
+                && SurroundSCMPollCoordinator.get().isShared(getPollingGroup(), project.getFullName())) {
+            // Jobs polling the same branch share a single 'cc' at their common parent repository.
+            List<SurroundSCMChangeRecord> changes = SurroundSCMPollCoordinator.get().poll(getPollingGroup(),
+                    project.getFullName(), getChangesRepository(), lastBuildDate, currentDate,
+                    (batchRepository, from, to) -> queryChangeRecords(launcher, listener, createChangesCommand(sscmExe,
+                            batchRepository, from, to, serverArgument, userPasswordArgument)),
+                    listener.getLogger());
+            changesCount = countRelevantChanges(changes, listener);
+        } else if (!createChangeFilter().isEmpty() || !getScope().isEmpty()) {
+            // The filters need the individual records, not just the count.
+            List<SurroundSCMChangeRecord> changes = queryChangeRecords(launcher, listener, createChangesCommand(sscmExe,
+                    getChangesRepository(), lastBuildDate, currentDate, serverArgument, userPasswordArgument));
+            changesCount = countRelevantChanges(changes, listener);
+        } else {
+            ArgumentListBuilder cmd = createChangesCommand(sscmExe, repository, lastBuildDate, currentDate,
+                    serverArgument, userPasswordArgument);
+            listener.getLogger().println("determineChangeCount executing the command: " + cmd.toString());
 
+            // The count is parsed from the first line as the command writes it, the rest of the output is discarded.
+            SurroundSCMChangeCounter counter = new SurroundSCMChangeCounter(listener.getLogger());
             try {
-                int cmdResult = launcher.launch().cmds(cmd).stdout(bos).join();
+                int cmdResult = launcher.launch().cmds(cmd).stdout(counter).join();
                 if (cmdResult != 0) {
-                    listener.fatalError("Determine changes count failed with exit code " + cmdResult);
+                    // Like queryChangeRecords(), a failed 'cc' must not pass for a quiet repository.
+                    throw new IOException("Determine changes count failed with exit code " + cmdResult);
                 }
             } finally {
-                bos.close();
+                counter.close();
             }
-        } finally {
-            os.close();
+            changesCount = counter.getCount();
         }
+        listener.getLogger().println("Number of changes determined to be: " + changesCount);
+        return changesCount;
+    }
 
-        BufferedReader br = null;
-        String line;
-        InputStreamReader is = new InputStreamReader(new FileInputStream(changelogFile), "UTF-8");
-        try {
-            br = new BufferedReader(is);
-            line = br.readLine();
-            if (line != null) {
-                listener.getLogger().println(line);
-                String num = line.substring(6);
-                try {
-                    changesCount = Double.valueOf(num.trim());
-                } catch (NumberFormatException nfe) {
-                    listener.fatalError("NumberFormatException: " + nfe.getMessage());
+    /**
+     * @return Returns the sparse checkout scope built from the job's configuration.
+     */
+    private SurroundSCMRepositoryScope getScope() {
+        return new SurroundSCMRepositoryScope(includedRepositories, excludedRepositories);
+    }
+
+    /**
+     * @return Returns what a checkout puts on disk: {@link #getKey()}, narrowed by the sparse checkout scope if set.
+     */
+    private String getCheckoutKey() {
+        if (getScope().isEmpty()) {
+            return getKey();
+        }
+        return Util.getDigestOf(getKey() + "\n" + includedRepositories + "\n" + excludedRepositories);
+    }
+
+    /**
+     * @return Returns the repository to ask for changes: the single included sub-repository if there is one, so the
+     *         server only looks at that subtree, otherwise the job's repository.
+     */
+    private String getChangesRepository() {
+        List<String> roots = getScope().getRoots();
+        return roots.size() == 1 && !roots.get(0).isEmpty() ? repository + "/" + roots.get(0) : repository;
+    }
+
+    /**
+     * @return Returns the polling filter built from the job's configuration.
+     */
+    private SurroundSCMChangeFilter createChangeFilter() {
+        return new SurroundSCMChangeFilter(includedPaths, excludedPaths, excludedUsers, excludedMessages);
+    }
+
+    /**
+     * Counts the records that pass the job's polling filter.
+     *
+     * @param changes  Records reported by the server
+     * @param listener Listener to log the information
+     * @return Returns the number of relevant changes
+     */
+    private int countRelevantChanges(List<SurroundSCMChangeRecord> changes, TaskListener listener) {
+        SurroundSCMRepositoryScope scope = getScope();
+        if (!scope.isEmpty()) {
+            List<SurroundSCMChangeRecord> inScope = new ArrayList<>();
+            for (SurroundSCMChangeRecord change : changes) {
+                if (scope.contains(change, repository)) {
+                    inScope.add(change);
                 }
             }
+            changes = inScope;
+        }
+        List<SurroundSCMChangeRecord> relevant = createChangeFilter().filter(changes, repository);
+        if (relevant.size() != changes.size()) {
+            listener.getLogger().println("Ignoring " + (changes.size() - relevant.size()) + " of " + changes.size()
+                    + " changes because of the polling filters.");
+        }
+        return relevant.size();
+    }
 
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
-        } finally {
-            if (br != null) {
-                br.close();
+    /**
+     * Builds the Surround SCM 'CruiseControl' command listing every change in the date range.
+     *
+     * @param sscmExe              Path to the sscm executable
+     * @param changesRepository    Repository to list the changes of, recursively
+     * @param from                 Start of the date range
+     * @param to                   End of the date range
+     * @param serverArgument       Server connection argument, see {@link #getServerConnectionArgument(Job, EnvVars, FilePath)}
+     * @param userPasswordArgument Username // password argument, it will be masked
+     * @return Returns the 'cc' command
+     */
+    private ArgumentListBuilder createChangesCommand(String sscmExe, String changesRepository, Date from, Date to,
+                                                     String serverArgument, String userPasswordArgument) {
+        SimpleDateFormat scm_datetime_formatter = new SimpleDateFormat(SURROUND_DATETIME_FORMAT_STR);
+
+        String dateRange = scm_datetime_formatter.format(from);
+        dateRange = dateRange.concat(":");
+        dateRange = dateRange.concat(scm_datetime_formatter.format(to));
+
+        ArgumentListBuilder cmd = new ArgumentListBuilder();
+        cmd.add(sscmExe);
+        cmd.add("cc");
+        cmd.add("/");
+        cmd.add("-d".concat(dateRange));
+        cmd.add("-b".concat(branch));
+        cmd.add("-p".concat(changesRepository));
+        cmd.add("-r");
+        cmd.add(serverArgument);
+        cmd.addMasked(userPasswordArgument);
+        return cmd;
+    }
+
+    /**
+     * Runs a 'cc' command and streams its output into change records.
+     *
+     * @param launcher Launcher to run the process
+     * @param listener Listener to log the information
+     * @param cmd      The 'cc' command, see {@link #createChangesCommand(String, String, Date, Date, String, String)}
+     * @return Returns the file records reported by the command
+     * @throws IOException          If the command fails
+     * @throws InterruptedException If the launcher is interrupted
+     */
+    private List<SurroundSCMChangeRecord> queryChangeRecords(Launcher launcher, TaskListener listener,
+                                                             ArgumentListBuilder cmd) throws IOException, InterruptedException {
+        listener.getLogger().println("determineChangeCount executing the command: " + cmd.toString());
+
+        SurroundSCMChangeRecord.Collector collector = new SurroundSCMChangeRecord.Collector();
+        try {
+            int cmdResult = launcher.launch().cmds(cmd).stdout(collector).join();
+            if (cmdResult != 0) {
+                throw new IOException("Determine changes count failed with exit code " + cmdResult);
             }
+        } finally {
+            collector.close();
         }
-        listener.getLogger().println("Number of changes determined to be: " + changesCount);
-        return changesCount;
+        return collector.getRecords();
+    }
+
+    /**
+     * @return Returns the group polls are batched on: server, branch and mainline repository. Jobs only share results
+     *         when they also share credentials.
+     */
+    @SuppressWarnings("deprecation")
+    private String getPollingGroup() {
+        String mainline = repository != null ? repository.split("/", 2)[0] : "";
+        return String.format("sscm://%s:%s//%s//%s:%s:%s", getServer(), getServerPort(), getBranch(), mainline,
+                credentialsId, userName);
     }
 
     public void addSscmArgServer(ArgumentListBuilder cmd) {
@@ -1059,10 +2037,30 @@ public final class SurroundSCM extends SCM implements Serializable {
         return result;
     }
 
+    /**
+     * What a build without a previous build (ex. the first build of a new branch job) records as changelog.
+     */
+    public enum FirstBuildChangelog {
+        /** Every change of the repository since the epoch. */
+        ALL,
+        /** The changes of the last {@link SurroundSCM#getFirstBuildLookbackDays()} days. */
+        LOOKBACK,
+        /** The changes since the last build of the parent branch, the lookback window if it never built. */
+        PARENT,
+        /** No changelog at all. */
+        NONE
+    }
+
     @SuppressWarnings("WeakerAccess")
     @Extension
     public static class SurroundSCMDescriptor extends SCMDescriptor<SurroundSCM> {
 
+        /**
+         * Shared secret the Surround SCM server triggers have to pass to the notifyCommit endpoint. The endpoint is
+         * disabled while no token is configured.
+         */
+        private Secret notifyCommitToken;
+
         /**
          * Constructs a new SurroundSCMDescriptor.
          */
@@ -1071,6 +2069,22 @@ public final class SurroundSCM extends SCM implements Serializable {
             load();
         }
 
+        public Secret getNotifyCommitToken() {
+            return notifyCommitToken;
+        }
+
+        @DataBoundSetter
+        public void setNotifyCommitToken(Secret notifyCommitToken) {
+            this.notifyCommitToken = notifyCommitToken;
+        }
+
+        @Override
+        public boolean configure(StaplerRequest req, JSONObject json) throws FormException {
+            req.bindJSON(this, json);
+            save();
+            return true;
+        }
+
         @Override
         public boolean isApplicable(Job project) {
             return true;
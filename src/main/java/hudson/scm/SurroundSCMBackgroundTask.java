@@ -0,0 +1,101 @@
+package hudson.scm;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+/**
+ * Work checkout runs next to the get, ex. the changelog 'cc'. Unlike a plain {@link Future}, it can be stopped and
+ * waited for: {@link #abandon()} only returns once the work has ended or can no longer start, so the caller can clean
+ * up the files and streams it was writing to.
+ *
+ * @param <T> Result of the work
+ */
+final class SurroundSCMBackgroundTask<T> {
+  private final String description;
+  private final AtomicBoolean claimed = new AtomicBoolean();
+  private final CountDownLatch finished = new CountDownLatch(1);
+  private Future<T> future;
+
+  private SurroundSCMBackgroundTask(String description) {
+    this.description = description;
+  }
+
+  /**
+   * Starts the work.
+   *
+   * @param executor    Runs the work
+   * @param description What the work does, for the message of a failure
+   * @param work        The work
+   * @return Returns the running task
+   */
+  @Nonnull
+  static <T> SurroundSCMBackgroundTask<T> submit(@Nonnull ExecutorService executor, @Nonnull String description,
+                                                 @Nonnull Callable<T> work) {
+    SurroundSCMBackgroundTask<T> task = new SurroundSCMBackgroundTask<>(description);
+    task.future = executor.submit(() -> {
+      if (!task.claimed.compareAndSet(false, true)) {
+        return null; // abandoned before it started
+      }
+      try {
+        return work.call();
+      } finally {
+        task.finished.countDown();
+      }
+    });
+    return task;
+  }
+
+  /**
+   * Waits for the work to finish. If the wait is interrupted the work is abandoned.
+   *
+   * @return Returns the result of the work
+   */
+  @CheckForNull
+  T join() throws IOException, InterruptedException {
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      if (cause instanceof InterruptedException) {
+        throw (InterruptedException) cause;
+      }
+      throw new IOException(description + " failed", cause);
+    } catch (InterruptedException e) {
+      abandon();
+      throw e;
+    }
+  }
+
+  /**
+   * Interrupts the work and waits until it has ended. Work that has not started yet never runs.
+   */
+  void abandon() {
+    future.cancel(true);
+    if (claimed.compareAndSet(false, true)) {
+      return;
+    }
+    boolean interrupted = false;
+    while (true) {
+      try {
+        finished.await();
+        break;
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
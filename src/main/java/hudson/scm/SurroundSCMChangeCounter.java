@@ -0,0 +1,53 @@
+package hudson.scm;
+
+import java.io.PrintStream;
+
+/**
+ * Reads the change count reported on the first line of the Surround SCM CLI's 'cc' output (ex. {@code total:12})
+ * and ignores the remaining lines.
+ */
+public class SurroundSCMChangeCounter extends SurroundSCMLineOutputStream {
+  private final PrintStream logger;
+  private double count;
+  private boolean found;
+
+  /**
+   * @param logger Where to echo the count line and parse failures, may be null.
+   */
+  public SurroundSCMChangeCounter(PrintStream logger) {
+    this.logger = logger;
+  }
+
+  @Override
+  protected boolean onLine(String line) {
+    if (logger != null) {
+      logger.println(line);
+    }
+    if (line.length() >= 6) {
+      try {
+        count = Double.valueOf(line.substring(6).trim());
+        found = true;
+      } catch (NumberFormatException nfe) {
+        if (logger != null) {
+          logger.println("NumberFormatException: " + nfe.getMessage());
+        }
+      }
+    }
+    // Only the first line carries the count.
+    return false;
+  }
+
+  /**
+   * @return Returns the number of changes reported, 0 if the count line was missing or malformed.
+   */
+  public double getCount() {
+    return count;
+  }
+
+  /**
+   * @return Returns 'true' if a count line was successfully parsed.
+   */
+  public boolean isCountFound() {
+    return found;
+  }
+}
@@ -0,0 +1,168 @@
+package hudson.scm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Decides which 'cc' records are relevant enough to trigger a build.
+ * <p>
+ * A record is ignored when its path (relative to the job's repository) does not match any included glob, matches an
+ * excluded glob, was checked in by an excluded user (matched on the user or email field) or has a comment matching
+ * an excluded message pattern (ex. {@code \[ci skip\]}).
+ * <p>
+ * Globs support '*' (any characters except '/'), '?' (one character except '/') and '**' (any number of
+ * sub-repositories). Every option is a newline separated list.
+ */
+public final class SurroundSCMChangeFilter {
+
+  private final List<Pattern> includedPaths;
+  private final List<Pattern> excludedPaths;
+  private final List<String> excludedUsers;
+  private final List<Pattern> excludedMessages;
+
+  public SurroundSCMChangeFilter(String includedPaths, String excludedPaths, String excludedUsers,
+                                 String excludedMessages) {
+    this.includedPaths = globs(includedPaths);
+    this.excludedPaths = globs(excludedPaths);
+    this.excludedUsers = new ArrayList<>();
+    for (String user : lines(excludedUsers)) {
+      this.excludedUsers.add(user.toLowerCase(Locale.ENGLISH));
+    }
+    this.excludedMessages = new ArrayList<>();
+    for (String message : lines(excludedMessages)) {
+      try {
+        this.excludedMessages.add(Pattern.compile(message));
+      } catch (PatternSyntaxException e) {
+        this.excludedMessages.add(Pattern.compile(Pattern.quote(message)));
+      }
+    }
+  }
+
+  /**
+   * @return Returns 'true' if this filter lets every record through.
+   */
+  public boolean isEmpty() {
+    return includedPaths.isEmpty() && excludedPaths.isEmpty() && excludedUsers.isEmpty() && excludedMessages.isEmpty();
+  }
+
+  /**
+   * @param records    Records to filter
+   * @param repository The job's repository, paths are matched relative to it.
+   * @return Returns the relevant records.
+   */
+  public List<SurroundSCMChangeRecord> filter(List<SurroundSCMChangeRecord> records, String repository) {
+    if (isEmpty()) {
+      return records;
+    }
+    List<SurroundSCMChangeRecord> result = new ArrayList<>();
+    for (SurroundSCMChangeRecord record : records) {
+      if (isRelevant(record, repository)) {
+        result.add(record);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @param record     Record to check
+   * @param repository The job's repository, paths are matched relative to it.
+   * @return Returns 'true' if the record should trigger a build.
+   */
+  public boolean isRelevant(SurroundSCMChangeRecord record, String repository) {
+    if (!excludedUsers.isEmpty()) {
+      String user = record.getUserName() != null ? record.getUserName().toLowerCase(Locale.ENGLISH) : "";
+      String email = record.getEmail() != null ? record.getEmail().toLowerCase(Locale.ENGLISH) : "";
+      if (excludedUsers.contains(user) || (!email.isEmpty() && excludedUsers.contains(email))) {
+        return false;
+      }
+    }
+    String comment = record.getComment() != null ? record.getComment() : "";
+    for (Pattern message : excludedMessages) {
+      if (message.matcher(comment).find()) {
+        return false;
+      }
+    }
+    String path = relativePath(record.getPath(), repository);
+    if (!includedPaths.isEmpty() && !matchesAny(includedPaths, path)) {
+      return false;
+    }
+    return !matchesAny(excludedPaths, path);
+  }
+
+  static String relativePath(String path, String repository) {
+    if (repository != null && path.startsWith(repository) && path.length() > repository.length()
+            && path.charAt(repository.length()) == '/') {
+      return path.substring(repository.length() + 1);
+    }
+    return path;
+  }
+
+  private static boolean matchesAny(List<Pattern> patterns, String path) {
+    for (Pattern pattern : patterns) {
+      if (pattern.matcher(path).matches()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static List<String> lines(String value) {
+    if (value == null) {
+      return Collections.emptyList();
+    }
+    List<String> result = new ArrayList<>();
+    for (String line : value.split("\r?\n")) {
+      line = line.trim();
+      if (!line.isEmpty()) {
+        result.add(line);
+      }
+    }
+    return result;
+  }
+
+  private static List<Pattern> globs(String value) {
+    List<Pattern> result = new ArrayList<>();
+    for (String glob : lines(value)) {
+      result.add(globToPattern(glob));
+    }
+    return result;
+  }
+
+  /**
+   * Converts a path glob into a regular expression.
+   */
+  static Pattern globToPattern(String glob) {
+    if (glob.startsWith("/")) {
+      glob = glob.substring(1);
+    }
+    StringBuilder regex = new StringBuilder();
+    int i = 0;
+    while (i < glob.length()) {
+      char c = glob.charAt(i);
+      if (c == '*') {
+        if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+          if (i + 2 < glob.length() && glob.charAt(i + 2) == '/') {
+            // '**/' matches zero or more sub-repositories
+            regex.append("(?:.*/)?");
+            i += 3;
+          } else {
+            regex.append(".*");
+            i += 2;
+          }
+          continue;
+        }
+        regex.append("[^/]*");
+      } else if (c == '?') {
+        regex.append("[^/]");
+      } else {
+        regex.append(Pattern.quote(String.valueOf(c)));
+      }
+      i++;
+    }
+    return Pattern.compile(regex.toString());
+  }
+}
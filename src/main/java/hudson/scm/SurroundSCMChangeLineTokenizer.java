@@ -0,0 +1,138 @@
+package hudson.scm;
+
+/**
+ * Single pass tokenizer for the lines of the Surround SCM CLI's "CruiseControl" ('cc') output,
+ * {@code <repository><file><version><action><date><comment><user><email>}.
+ * <p>
+ * The five leading fields are found scanning forward for the {@code "><"} delimiters and the two trailing fields
+ * scanning backward, whatever is left in between is the comment. A comment may therefore contain {@code "<>"}, which
+ * the CLI does not escape. Each character is looked at once at most, so the cost is linear in the line length.
+ * <p>
+ * Field boundaries are kept in arrays that are reused for every line; fields are only copied into strings when they
+ * are asked for. An instance is not thread safe, use one per stream or file.
+ */
+final class SurroundSCMChangeLineTokenizer {
+  static final int REPOSITORY = 0;
+  static final int FILENAME = 1;
+  static final int VERSION = 2;
+  static final int ACTION = 3;
+  static final int DATE = 4;
+  static final int COMMENT = 5;
+  static final int USER_NAME = 6;
+  static final int EMAIL = 7;
+
+  private static final int FIELDS = 8;
+  private static final int LEADING_FIELDS = 5;
+
+  private final int[] starts = new int[FIELDS];
+  private final int[] ends = new int[FIELDS];
+  private CharSequence line;
+
+  /**
+   * Splits a line into its fields.
+   *
+   * @param cruiseControlLine Line to split, without the line terminator
+   * @return Returns 'false' if the line is not a file record (ex. the 'total' line); the fields are then undefined.
+   */
+  boolean tokenize(CharSequence cruiseControlLine) {
+    line = cruiseControlLine;
+    int length = cruiseControlLine.length();
+
+    int open = 0;
+    while (open < length && cruiseControlLine.charAt(open) != '<') {
+      open++;
+    }
+    int close = length - 1;
+    while (close > open && cruiseControlLine.charAt(close) != '>') {
+      close--;
+    }
+    if (open >= close) {
+      return false;
+    }
+
+    int position = open + 1;
+    for (int field = 0; field < LEADING_FIELDS; field++) {
+      int delimiter = nextDelimiter(position, close);
+      if (delimiter < 0) {
+        return false;
+      }
+      starts[field] = position;
+      ends[field] = delimiter;
+      position = delimiter + 2;
+    }
+
+    int end = close;
+    for (int field = FIELDS - 1; field > COMMENT; field--) {
+      int delimiter = previousDelimiter(end, position);
+      if (delimiter < 0) {
+        return false;
+      }
+      starts[field] = delimiter + 2;
+      ends[field] = end;
+      end = delimiter;
+    }
+    starts[COMMENT] = position;
+    ends[COMMENT] = end;
+    return true;
+  }
+
+  /**
+   * @return Returns the first index of {@code "><"} at or after 'from' and before 'limit', or -1.
+   */
+  private int nextDelimiter(int from, int limit) {
+    for (int i = from; i < limit; i++) {
+      if (line.charAt(i) == '>' && line.charAt(i + 1) == '<') {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @return Returns the last index of {@code "><"} before 'before' and at or after 'floor', or -1.
+   */
+  private int previousDelimiter(int before, int floor) {
+    for (int i = before - 2; i >= floor; i--) {
+      if (line.charAt(i) == '>' && line.charAt(i + 1) == '<') {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @param field One of the field constants
+   * @return Returns a copy of the field of the last tokenized line.
+   */
+  String field(int field) {
+    return line.subSequence(starts[field], ends[field]).toString();
+  }
+
+  /**
+   * Compares a field of the last tokenized line with a string, without copying the field.
+   *
+   * @param field One of the field constants
+   * @param other String to compare with
+   * @return Returns a negative number, zero or a positive number like {@link String#compareTo(String)}.
+   */
+  int compareField(int field, String other) {
+    int start = starts[field];
+    int length = ends[field] - start;
+    int common = Math.min(length, other.length());
+    for (int i = 0; i < common; i++) {
+      int difference = line.charAt(start + i) - other.charAt(i);
+      if (difference != 0) {
+        return difference;
+      }
+    }
+    return length - other.length();
+  }
+
+  /**
+   * @return Returns a record of the last tokenized line.
+   */
+  SurroundSCMChangeRecord toRecord() {
+    return new SurroundSCMChangeRecord(field(REPOSITORY), field(FILENAME), field(VERSION), field(ACTION),
+            field(DATE), field(COMMENT), field(USER_NAME), field(EMAIL));
+  }
+}
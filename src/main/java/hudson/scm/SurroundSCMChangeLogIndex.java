@@ -0,0 +1,253 @@
+package hudson.scm;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import hudson.scm.SurroundSCMChangeLogSet.SurroundSCMAffectedFile;
+import hudson.scm.SurroundSCMChangeLogSet.SurroundSCMChangeLogSetEntry;
+
+/**
+ * Compact, indexed copy of a build's changelog, written next to it as '&lt;changelog&gt;.idx'. It holds the parsed
+ * check-in transactions in pages of {@link #PAGE_SIZE}, each page deflated on its own, followed by a footer with the
+ * page offsets and the email address of every user. A {@link SurroundSCMChangeLogSet} backed by it only reads the
+ * pages that are looked at.
+ * <p>
+ * Layout: magic, format version, the pages, then the footer (transaction count, page size, page offsets, emails) and
+ * the footer offset as the last 8 bytes. Strings are stored as length prefixed UTF-8.
+ */
+final class SurroundSCMChangeLogIndex {
+  static final String SUFFIX = ".idx";
+  static final int PAGE_SIZE = Integer.getInteger(SurroundSCMChangeLogIndex.class.getName() + ".pageSize", 50);
+
+  private static final int MAGIC = 0x5353434c; // SSCL
+  private static final int FORMAT_VERSION = 2;
+  private static final int MAX_STRING_LENGTH = 16 * 1024 * 1024;
+
+  private final File file;
+  private final int count;
+  private final int pageSize;
+  private final long[] offsets;
+  private final Map<String, String> emails;
+
+  private SurroundSCMChangeLogIndex(File file, int count, int pageSize, long[] offsets, Map<String, String> emails) {
+    this.file = file;
+    this.count = count;
+    this.pageSize = pageSize;
+    this.offsets = offsets;
+    this.emails = emails;
+  }
+
+  /**
+   * @return Returns the index file belonging to a changelog file.
+   */
+  @Nonnull
+  static File getIndexFile(@Nonnull File changelogFile) {
+    return new File(changelogFile.getPath() + SUFFIX);
+  }
+
+  /**
+   * Opens the index of a changelog.
+   *
+   * @param changelogFile The changelog
+   * @return Returns the index, or null if there is none, it is older than the changelog or in an unknown format.
+   */
+  @CheckForNull
+  static SurroundSCMChangeLogIndex open(@Nonnull File changelogFile) throws IOException {
+    File file = getIndexFile(changelogFile);
+    if (!file.isFile() || file.lastModified() < changelogFile.lastModified()) {
+      return null;
+    }
+    try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+      if (in.length() < 16 || in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+        return null;
+      }
+      in.seek(in.length() - 8);
+      long footer = in.readLong();
+      if (footer < 8 || footer > in.length() - 8) {
+        return null;
+      }
+      in.seek(footer);
+      int count = in.readInt();
+      int pageSize = in.readInt();
+      int pages = in.readInt();
+      long[] offsets = new long[pages + 1];
+      for (int i = 0; i <= pages; i++) {
+        offsets[i] = in.readLong();
+      }
+      int users = in.readInt();
+      Map<String, String> emails = new LinkedHashMap<>();
+      for (int i = 0; i < users; i++) {
+        emails.put(readString(in), readString(in));
+      }
+      return new SurroundSCMChangeLogIndex(file, count, pageSize, offsets, emails);
+    } catch (EOFException e) {
+      return null; // truncated, ex. the controller stopped while writing it
+    }
+  }
+
+  /**
+   * Writes the index of a changelog.
+   *
+   * @param changelogFile The changelog
+   * @param changes       Its parsed transactions
+   */
+  static void write(@Nonnull File changelogFile, @Nonnull SurroundSCMChangeLogSet changes) throws IOException {
+    Map<String, String> emails = changes.getEmails();
+    File file = getIndexFile(changelogFile);
+    File temp = new File(file.getPath() + ".tmp");
+    try (RandomAccessFile out = new RandomAccessFile(temp, "rw")) {
+      out.setLength(0);
+      out.writeInt(MAGIC);
+      out.writeInt(FORMAT_VERSION);
+
+      List<Long> offsets = new ArrayList<>();
+      List<SurroundSCMChangeLogSetEntry> page = new ArrayList<>(PAGE_SIZE);
+      for (SurroundSCMChangeLogSetEntry entry : changes) {
+        page.add(entry);
+        if (page.size() == PAGE_SIZE) {
+          offsets.add(out.getFilePointer());
+          out.write(encode(page));
+          page.clear();
+        }
+      }
+      if (!page.isEmpty()) {
+        offsets.add(out.getFilePointer());
+        out.write(encode(page));
+      }
+
+      long footer = out.getFilePointer();
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream data = new DataOutputStream(bytes);
+      data.writeInt(changes.getTotalCount());
+      data.writeInt(PAGE_SIZE);
+      data.writeInt(offsets.size());
+      for (long offset : offsets) {
+        data.writeLong(offset);
+      }
+      data.writeLong(footer); // end of the last page
+      data.writeInt(emails.size());
+      for (Map.Entry<String, String> email : emails.entrySet()) {
+        writeString(data, email.getKey());
+        writeString(data, email.getValue());
+      }
+      data.writeLong(footer);
+      data.flush();
+      out.write(bytes.toByteArray());
+    }
+    Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  private static byte[] encode(List<SurroundSCMChangeLogSetEntry> page) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream data = new DataOutputStream(new DeflaterOutputStream(bytes))) {
+      data.writeInt(page.size());
+      for (SurroundSCMChangeLogSetEntry entry : page) {
+        writeString(data, entry.getUserName());
+        writeString(data, entry.getComment());
+        data.writeLong(entry.getTimestamp());
+        Collection<SurroundSCMAffectedFile> files = entry.getAffectedFiles();
+        data.writeInt(files.size());
+        for (SurroundSCMAffectedFile file : files) {
+          writeString(data, file.getRepository());
+          writeString(data, file.getFilename());
+          data.writeInt(file.getVersionNumber());
+          writeString(data, file.getAction());
+        }
+      }
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * @return Returns the number of transactions.
+   */
+  int getCount() {
+    return count;
+  }
+
+  int getPageSize() {
+    return pageSize;
+  }
+
+  int getPageCount() {
+    return offsets.length - 1;
+  }
+
+  /**
+   * @return Returns the email address of each user name of the changelog.
+   */
+  @Nonnull
+  Map<String, String> getEmails() {
+    return Collections.unmodifiableMap(emails);
+  }
+
+  /**
+   * Reads one page of transactions.
+   *
+   * @param page   Page number, from 0
+   * @param parent Change set the entries belong to
+   * @return Returns the entries of the page.
+   */
+  @Nonnull
+  List<SurroundSCMChangeLogSetEntry> readPage(int page, @Nonnull SurroundSCMChangeLogSet parent) throws IOException {
+    byte[] compressed = new byte[(int) (offsets[page + 1] - offsets[page])];
+    try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+      in.seek(offsets[page]);
+      in.readFully(compressed);
+    }
+    // Repeated strings (users, repositories, actions) are shared through the change set.
+    try (DataInputStream data = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(compressed)))) {
+      int size = data.readInt();
+      List<SurroundSCMChangeLogSetEntry> entries = new ArrayList<>(size);
+      for (int i = 0; i < size; i++) {
+        String userName = readString(data);
+        String comment = readString(data);
+        long timestamp = data.readLong();
+        SurroundSCMChangeLogSetEntry entry = new SurroundSCMChangeLogSetEntry(comment, timestamp, parent, userName, "");
+        int files = data.readInt();
+        for (int j = 0; j < files; j++) {
+          entry.addFile(readString(data), readString(data), data.readInt(), readString(data));
+        }
+        entries.add(entry);
+      }
+      return entries;
+    }
+  }
+
+  private static void writeString(DataOutputStream data, String value) throws IOException {
+    byte[] bytes = (value != null ? value : "").getBytes(StandardCharsets.UTF_8);
+    data.writeInt(bytes.length);
+    data.write(bytes);
+  }
+
+  private static String readString(DataInput data) throws IOException {
+    int length = data.readInt();
+    if (length < 0 || length > MAX_STRING_LENGTH) {
+      throw new IOException("Damaged changelog index, string of " + length + " bytes");
+    }
+    byte[] bytes = new byte[length];
+    data.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
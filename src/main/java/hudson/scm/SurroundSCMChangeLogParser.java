@@ -5,14 +5,33 @@ import hudson.model.Run;
 import hudson.scm.ChangeLogSet.Entry;
 
 import java.io.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.lang.ref.SoftReference;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public class SurroundSCMChangeLogParser extends ChangeLogParser {
+  private static final Logger LOGGER = Logger.getLogger(SurroundSCMChangeLogParser.class.getName());
 
-  private final static String CC_LINE_PATTERN = "<(.*)><(.*)><(.*)><(.*)><(.*)><(.*)><(.*)><(.*)>";
+  /**
+   * Number of parsed change sets kept on the controller, 0 disables the cache.
+   */
+  static final int CACHE_SIZE = Integer.getInteger(SurroundSCMChangeLogParser.class.getName() + ".cacheSize", 100);
 
-  private final static Pattern CRUISECONTROL_PATTERN = Pattern.compile(CC_LINE_PATTERN);
+  /**
+   * Parsed changelogs by path, least recently used first. The dashboard, the REST API and other plugins ask for the
+   * change sets of the same recent builds over and over, often through build objects that were loaded again. The
+   * parsed content does not depend on the build object, so each call gets a new change set sharing it; the garbage
+   * collector may still drop any of them.
+   */
+  private static final Map<String, Cached> CACHE = new LinkedHashMap<String, Cached>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, Cached> eldest) {
+      return size() > CACHE_SIZE;
+    }
+  };
 
   /**
    *  Parses the Surround SCM changelogFile, which is generated by the Surround SCM CLI's cruisecontrol command.
@@ -20,9 +39,9 @@ public class SurroundSCMChangeLogParser extends ChangeLogParser {
    */
   @Override
   public ChangeLogSet<? extends Entry> parse(Run build, RepositoryBrowser<?> browser, File changelogFile) {
-    //open the changelog File
     SurroundSCMChangeLogSet cls = new SurroundSCMChangeLogSet(build, browser);
-    commonParseChangeLog(cls, changelogFile);
+    cls.copyFrom(getParsed(changelogFile));
+    cls.updateMailAddresses();
     return cls;
   }
 
@@ -30,11 +49,102 @@ public class SurroundSCMChangeLogParser extends ChangeLogParser {
   @Deprecated
   public ChangeLogSet<? extends Entry> parse(AbstractBuild build,
                                              File changelogFile) {
-    //open the changelog File
     SurroundSCMChangeLogSet cls = new SurroundSCMChangeLogSet(build);
+    cls.copyFrom(getParsed(changelogFile));
+    cls.updateMailAddresses();
+    return cls;
+  }
+
+  /**
+   * @return Returns the parsed changelog, without a build, from the cache if the file did not change since.
+   */
+  private static SurroundSCMChangeLogSet getParsed(File changelogFile) {
+    SurroundSCMChangeLogSet parsed = getCached(changelogFile);
+    if (parsed == null) {
+      //open the changelog File
+      parsed = new SurroundSCMChangeLogSet(null, null);
+      load(parsed, changelogFile);
+      if (CACHE_SIZE > 0 && changelogFile.isFile()) {
+        synchronized (CACHE) {
+          CACHE.put(changelogFile.getPath(), new Cached(parsed, changelogFile));
+        }
+      }
+    }
+    return parsed;
+  }
+
+  /**
+   * @return Returns the cached parsed changelog if the file is unchanged and it was not collected, or null.
+   */
+  static SurroundSCMChangeLogSet getCached(File changelogFile) {
+    if (CACHE_SIZE <= 0) {
+      return null;
+    }
+    Cached cached;
+    synchronized (CACHE) {
+      cached = CACHE.get(changelogFile.getPath());
+    }
+    return cached != null ? cached.get(changelogFile) : null;
+  }
+
+  /**
+   * Soft reference to a parsed changelog along with the state of the changelog file it was parsed from.
+   */
+  private static final class Cached extends SoftReference<SurroundSCMChangeLogSet> {
+    private final long lastModified;
+    private final long length;
+
+    Cached(SurroundSCMChangeLogSet parsed, File changelogFile) {
+      super(parsed);
+      this.lastModified = changelogFile.lastModified();
+      this.length = changelogFile.length();
+    }
+
+    /**
+     * @return Returns the parsed changelog if the file did not change since it was parsed and it was not collected.
+     */
+    SurroundSCMChangeLogSet get(File changelogFile) {
+      if (changelogFile.lastModified() != lastModified || changelogFile.length() != length) {
+        return null;
+      }
+      return get();
+    }
+  }
+
+  /**
+   * Writes the index of a freshly captured changelog, so its build never needs to parse it in full.
+   *
+   * @param changelogFile The changelog
+   */
+  static void writeIndex(File changelogFile) throws IOException {
+    SurroundSCMChangeLogSet cls = new SurroundSCMChangeLogSet(null, null);
     commonParseChangeLog(cls, changelogFile);
+    SurroundSCMChangeLogIndex.write(changelogFile, cls);
+  }
 
-    return cls;
+  /**
+   * Fills the change set from the changelog's index, or parses the changelog if there is no usable index.
+   */
+  private static void load(SurroundSCMChangeLogSet cls, File changelogFile) {
+    SurroundSCMChangeLogIndex index = null;
+    try {
+      index = SurroundSCMChangeLogIndex.open(changelogFile);
+    } catch (IOException e) {
+      LOGGER.log(Level.WARNING, "Could not open the index of " + changelogFile, e);
+    }
+    if (index != null) {
+      cls.setIndex(index);
+    } else {
+      commonParseChangeLog(cls, changelogFile);
+      if (changelogFile.isFile()) {
+        // Builds from before the index get one on their first view.
+        try {
+          SurroundSCMChangeLogIndex.write(changelogFile, cls);
+        } catch (IOException e) {
+          LOGGER.log(Level.FINE, "Could not index " + changelogFile, e);
+        }
+      }
+    }
   }
 
   /**
@@ -43,7 +153,7 @@ public class SurroundSCMChangeLogParser extends ChangeLogParser {
    * @param cls           What changelogset to add newly parsed entries too.
    * @param changelogFile What changelog file to use as a source for the parsing.
    */
-  private void commonParseChangeLog(SurroundSCMChangeLogSet cls, File changelogFile) {
+  private static void commonParseChangeLog(SurroundSCMChangeLogSet cls, File changelogFile) {
     String line;
     BufferedReader br = null;
 
@@ -53,13 +163,27 @@ public class SurroundSCMChangeLogParser extends ChangeLogParser {
       is = new InputStreamReader(new FileInputStream(changelogFile), "UTF-8");
 
       br = new BufferedReader(is);
+      SurroundSCMChangeLineTokenizer tokenizer = new SurroundSCMChangeLineTokenizer();
+      // File records of one check-in share user, comment and timestamp, they become one entry.
+      Map<String, SurroundSCMChangeLogSet.SurroundSCMChangeLogSetEntry> transactions = new HashMap<>();
       while ((line = br.readLine())!=null)
       {
-        SurroundSCMChangeLogSet.SurroundSCMChangeLogSetEntry entry = parseCCLine(cls, line);
-        if(entry != null)
+        SurroundSCMChangeRecord record = SurroundSCMChangeRecord.parse(tokenizer, line);
+        if(record == null)
         {
+          continue;
+        }
+        String key = record.getUserName() + '\n' + record.getDate() + '\n' + record.getComment();
+        SurroundSCMChangeLogSet.SurroundSCMChangeLogSetEntry entry = transactions.get(key);
+        if(entry == null)
+        {
+          entry = new SurroundSCMChangeLogSet.SurroundSCMChangeLogSetEntry(record.getComment(), record.getDate(), cls,
+                  record.getUserName(), record.getEmail());
+          transactions.put(key, entry);
           cls.addEntry(entry);
         }
+        entry.addFile(record.getRepository(), record.getFilename(),
+                SurroundSCMChangeLogSet.SurroundSCMAffectedFile.parseVersion(record.getVersion()), record.getAction());
       }
 
     } catch (IOException e) {
@@ -74,37 +198,6 @@ public class SurroundSCMChangeLogParser extends ChangeLogParser {
       }
     }
   }
-
-    /**
-     * Parses a 'CruiseControl' formatted line from the Surround SCM CLI's "CruiseControl" command.
-     * ex: {@code <Mainline/Repository/Path/To/File><Filename.txt><21><Check in><20161103144114><Comment for the action><LastName, FirstName><email@address.com> }
-     * @param cls               SurroundSCMChangeLogSet this entry will be added to.
-     * @param cruiseControlLine Line to parse
-     * @return  Returns a new {@link hudson.scm.SurroundSCMChangeLogSet.SurroundSCMChangeLogSetEntry} created based on the
-     *          passed in line.  This could return a 'null' result if we fail to parse the line.
-     */
-  private SurroundSCMChangeLogSet.SurroundSCMChangeLogSetEntry parseCCLine(SurroundSCMChangeLogSet cls, String cruiseControlLine ) {
-    Matcher changeMatcher = CRUISECONTROL_PATTERN.matcher(cruiseControlLine);
-
-    // The SSCM 'cruisecontrol' output is supposed to output 8 blocks of "<....>" per line.  However, due to a defect
-    // (which will hopefully be fixed soon) there is a possibility that the contents of hte "<...>" block could themselves
-    // contain "<>" characters.  This breaks the parsing of the line and could result in garbage output.
-    // To try to address that situation in a small way we are going to check to make sure we found exactly 8 'groups'.
-    // If we found more // less then we will consider it a parsing failure, and return a 'null' entry.
-    if(changeMatcher.find() && changeMatcher.groupCount() == 8) {
-      String repository = changeMatcher.group(1);
-      String filename = changeMatcher.group(2);
-      String version = changeMatcher.group(3);
-      String action = changeMatcher.group(4);
-      String date = changeMatcher.group(5);
-      String comment = changeMatcher.group(6);
-      String username = changeMatcher.group(7);
-      String email = changeMatcher.group(8);
-
-      return new SurroundSCMChangeLogSet.SurroundSCMChangeLogSetEntry(repository.concat("/").concat(filename), comment, version, action, date, cls, username, email);
-    }
-    return null;
-  }
 }
 
 
@@ -4,18 +4,84 @@ import hudson.model.AbstractBuild;
 import hudson.model.Run;
 import hudson.model.User;
 import hudson.scm.SurroundSCMChangeLogSet.SurroundSCMChangeLogSetEntry;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
 import hudson.tasks.Mailer;
+import jenkins.util.Timer;
 import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
 
+import javax.annotation.CheckForNull;
 import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.WeakHashMap;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public final class SurroundSCMChangeLogSet extends ChangeLogSet<SurroundSCMChangeLogSetEntry>
 {
+  private static final Logger LOGGER = Logger.getLogger(SurroundSCMChangeLogSet.class.getName());
+
+  private static final int MAIL_ADDRESSES_UPDATED_SIZE = Integer.getInteger(
+          SurroundSCMChangeLogSet.class.getName() + ".mailAddressesUpdatedSize", 10000);
+
+  /**
+   * Ids ({@link Run#getExternalizableId()}) of the builds whose email addresses were already handed to the Jenkins
+   * users, most recent last. The change set is parsed again for every view of the build, and the build itself may be
+   * loaded again, but the users only need updating once.
+   */
+  private static final Map<String, Boolean> MAIL_ADDRESSES_UPDATED = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+      return size() > MAIL_ADDRESSES_UPDATED_SIZE;
+    }
+  };
+
   private Collection<SurroundSCMChangeLogSetEntry> changes;
 
+  /**
+   * Jenkins users resolved so far, by Surround SCM user name. Each distinct name is looked up once per change set.
+   */
+  private final Map<String, User> users = new HashMap<String, User>();
+
+  /**
+   * First email address seen for each Surround SCM user name, see {@link #updateMailAddresses()}.
+   */
+  private final Map<String, String> emails = new LinkedHashMap<String, String>();
+
+  /**
+   * Dictionary of the strings repeated across the entries of this change set, see {@link #intern(String)}. It only
+   * holds them weakly, so pages of the index the garbage collector dropped take their strings with them.
+   */
+  private final Map<String, WeakReference<String>> strings = new WeakHashMap<String, WeakReference<String>>();
+
+  private final SimpleDateFormat dateFormat = new SimpleDateFormat(SurroundSCMChangeRecord.DATE_FORMAT);
+
+  /**
+   * Index the entries are paged in from, or null if they were all parsed into {@link #changes}.
+   */
+  private SurroundSCMChangeLogIndex index;
+
+  /**
+   * Pages read from the {@link #index} so far, the garbage collector may drop them again.
+   */
+  private List<SoftReference<List<SurroundSCMChangeLogSetEntry>>> pages;
+
   protected SurroundSCMChangeLogSet(Run<?, ?> run, RepositoryBrowser<?> browser) {
     super(run, browser);
     changes = new ArrayList<SurroundSCMChangeLogSetEntry>();
@@ -27,120 +93,541 @@ public final class SurroundSCMChangeLogSet extends ChangeLogSet<SurroundSCMChang
     changes = new ArrayList<SurroundSCMChangeLogSetEntry>();
   }
 
+  /**
+   * Backs this change set by an index instead of parsed entries, they are then read a page at a time.
+   */
+  void setIndex(SurroundSCMChangeLogIndex index) {
+    this.index = index;
+    this.pages = new ArrayList<SoftReference<List<SurroundSCMChangeLogSetEntry>>>(
+            Collections.nCopies(index.getPageCount(), (SoftReference<List<SurroundSCMChangeLogSetEntry>>) null));
+    for (Map.Entry<String, String> email : index.getEmails().entrySet()) {
+      addEmail(email.getKey(), email.getValue());
+    }
+  }
+
+  /**
+   * Fills this change set with the content of another one, ex. a cached parse of the same changelog for an earlier
+   * object of the build. Entries of the index are read again for this change set, parsed entries are copied with their
+   * files shared.
+   */
+  void copyFrom(SurroundSCMChangeLogSet source) {
+    if (source.index != null) {
+      setIndex(source.index);
+      return;
+    }
+    for (SurroundSCMChangeLogSetEntry entry : source.changes) {
+      addEntry(new SurroundSCMChangeLogSetEntry(entry, this));
+    }
+    for (Map.Entry<String, String> email : source.getEmails().entrySet()) {
+      addEmail(email.getKey(), email.getValue());
+    }
+  }
+
   @Override
   public Iterator<SurroundSCMChangeLogSetEntry> iterator() {
-    return changes.iterator();
+    if (index == null) {
+      return changes.iterator();
+    }
+    return new Iterator<SurroundSCMChangeLogSetEntry>() {
+      private int page;
+      private Iterator<SurroundSCMChangeLogSetEntry> current = Collections.emptyIterator();
+
+      @Override
+      public boolean hasNext() {
+        while (!current.hasNext() && page < getPageCount()) {
+          current = getPage(page++).iterator();
+        }
+        return current.hasNext();
+      }
+
+      @Override
+      public SurroundSCMChangeLogSetEntry next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        return current.next();
+      }
+    };
   }
 
   @Override
   public boolean isEmptySet() {
-    return changes.isEmpty();
+    return getTotalCount() == 0;
+  }
+
+  /**
+   * @return Returns the number of check-in transactions.
+   */
+  public int getTotalCount() {
+    return index != null ? index.getCount() : changes.size();
+  }
+
+  public int getPageSize() {
+    return index != null ? index.getPageSize() : SurroundSCMChangeLogIndex.PAGE_SIZE;
+  }
+
+  public int getPageCount() {
+    return (getTotalCount() + getPageSize() - 1) / getPageSize();
+  }
+
+  /**
+   * @param value Page number from a request parameter, may be missing or garbage
+   * @return Returns the page number to show, from 0.
+   */
+  public int toPageNumber(String value) {
+    int page = 0;
+    try {
+      page = value != null ? Integer.parseInt(value.trim()) : 0;
+    } catch (NumberFormatException e) {
+      // first page
+    }
+    return Math.max(0, Math.min(page, getPageCount() - 1));
+  }
+
+  /**
+   * @param page Page number, from 0
+   * @return Returns the entries of that page, read from the index if this change set has one.
+   */
+  public List<SurroundSCMChangeLogSetEntry> getPage(int page) {
+    if (page < 0 || page >= getPageCount()) {
+      return Collections.emptyList();
+    }
+    if (index == null) {
+      List<SurroundSCMChangeLogSetEntry> all = (List<SurroundSCMChangeLogSetEntry>) changes;
+      return Collections.unmodifiableList(all.subList(page * getPageSize(),
+              Math.min(all.size(), (page + 1) * getPageSize())));
+    }
+    synchronized (pages) {
+      SoftReference<List<SurroundSCMChangeLogSetEntry>> cached = pages.get(page);
+      List<SurroundSCMChangeLogSetEntry> entries = cached != null ? cached.get() : null;
+      if (entries == null) {
+        try {
+          entries = Collections.unmodifiableList(index.readPage(page, this));
+        } catch (IOException e) {
+          LOGGER.log(Level.WARNING, "Could not read page " + page + " of the changelog index", e);
+          return Collections.emptyList();
+        }
+        pages.set(page, new SoftReference<List<SurroundSCMChangeLogSetEntry>>(entries));
+      }
+      return entries;
+    }
   }
 
   public boolean addEntry(SurroundSCMChangeLogSetEntry e) {
     return changes.add(e);
   }
 
+  /**
+   * @return Returns the email address of each user name seen in the changelog.
+   */
+  Map<String, String> getEmails() {
+    synchronized (emails) {
+      return new LinkedHashMap<String, String>(emails);
+    }
+  }
+
+  /**
+   * @param userName Surround SCM user name
+   * @return Returns the Jenkins user of that name, looked up on first use and remembered for this change set.
+   */
+  User getUser(String userName) {
+    synchronized (users) {
+      User user = users.get(userName);
+      if (user == null) {
+        user = User.get(userName);
+        users.put(userName, user);
+      }
+      return user;
+    }
+  }
+
+  /**
+   * Remembers the email address the changelog reports for a user, applied by {@link #updateMailAddresses()}.
+   */
+  void addEmail(String userName, String email) {
+    if (userName != null && email != null && !email.isEmpty()) {
+      synchronized (emails) {
+        if (!emails.containsKey(userName)) {
+          emails.put(userName, email);
+        }
+      }
+    }
+  }
+
+  /**
+   * Gives the users of this change set that have no explicitly configured email address the one from the changelog.
+   * Runs once per build in the background, so neither parsing nor page views wait for users to be created and saved.
+   *
+   * @return Returns the background update, or null if there is nothing to update or the build was already done
+   */
+  @CheckForNull
+  Future<?> updateMailAddresses() {
+    final Map<String, String> pending;
+    synchronized (emails) {
+      if (emails.isEmpty()) {
+        return null;
+      }
+      pending = new LinkedHashMap<String, String>(emails);
+    }
+    Run<?, ?> run = getRun();
+    if (run != null) {
+      synchronized (MAIL_ADDRESSES_UPDATED) {
+        if (MAIL_ADDRESSES_UPDATED.put(run.getExternalizableId(), Boolean.TRUE) != null) {
+          return null;
+        }
+      }
+    }
+    return Timer.get().submit(new Runnable() {
+      @Override
+      public void run() {
+        try (ACLContext ctx = ACL.as(ACL.SYSTEM)) {
+          for (Map.Entry<String, String> email : pending.entrySet()) {
+            User user = getUser(email.getKey());
+            Mailer.UserProperty userMailer = user.getProperty(Mailer.UserProperty.class);
+            // Now... if the Jenkin's "User" either doesn't have an email address, or they have never explicitly
+            // set the email address, supply our own email address for the user. Adding the property saves the user,
+            // so it is skipped when the address is already the one from the changelog.
+            if (userMailer == null || !userMailer.hasExplicitlyConfiguredAddress()
+                    && !email.getValue().equals(userMailer.getAddress())) {
+              try {
+                user.addProperty(new Mailer.UserProperty(email.getValue()));
+              } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not set the email address of " + user.getId(), e);
+              }
+            }
+          }
+        }
+      }
+    });
+  }
+
+  /**
+   * @return Returns the instance of the string entries of this change set already hold, or the string itself.
+   */
+  String intern(String value) {
+    if (value == null) {
+      return null;
+    }
+    synchronized (strings) {
+      WeakReference<String> existing = strings.get(value);
+      String interned = existing != null ? existing.get() : null;
+      if (interned == null) {
+        strings.put(value, new WeakReference<String>(value));
+        interned = value;
+      }
+      return interned;
+    }
+  }
+
+  /**
+   * @param date Date formatted as {@link SurroundSCMChangeRecord#DATE_FORMAT}
+   * @return Returns the date in milliseconds since the epoch, or -1 if it could not be parsed.
+   */
+  long toTimestamp(String date) {
+    if (date == null) {
+      return -1;
+    }
+    synchronized (dateFormat) {
+      try {
+        return dateFormat.parse(date).getTime();
+      } catch (ParseException e) {
+        return -1;
+      }
+    }
+  }
+
+  /**
+   * @param timestamp Milliseconds since the epoch
+   * @return Returns the date formatted as {@link SurroundSCMChangeRecord#DATE_FORMAT}.
+   */
+  String formatDate(long timestamp) {
+    synchronized (dateFormat) {
+      return dateFormat.format(new Date(timestamp));
+    }
+  }
+
+  private static String intern(ChangeLogSet parent, String value) {
+    return parent instanceof SurroundSCMChangeLogSet ? ((SurroundSCMChangeLogSet) parent).intern(value) : value;
+  }
+
+  private static long toTimestamp(ChangeLogSet parent, String date) {
+    if (parent instanceof SurroundSCMChangeLogSet) {
+      return ((SurroundSCMChangeLogSet) parent).toTimestamp(date);
+    }
+    Date parsed = SurroundSCMChangeRecord.parseDate(date);
+    return parsed != null ? parsed.getTime() : -1;
+  }
+
+  private static String formatDate(ChangeLogSet parent, long timestamp) {
+    if (parent instanceof SurroundSCMChangeLogSet) {
+      return ((SurroundSCMChangeLogSet) parent).formatDate(timestamp);
+    }
+    return new SimpleDateFormat(SurroundSCMChangeRecord.DATE_FORMAT).format(new Date(timestamp));
+  }
+
+  /**
+   * One check-in transaction: the file versions a user checked in with the same comment at the same time.
+   * <p>
+   * Strings repeated across entries (users, repositories, actions) are shared through the change set's
+   * {@link #intern(String)}, comments are mostly unique and kept as they are. The date is kept in milliseconds and
+   * versions as numbers.
+   */
   public static class SurroundSCMChangeLogSetEntry extends ChangeLogSet.Entry {
-    private String comment;
-    private String affectedFile;
-    private String version;
-    private String date;
-    private User user;
-    private String action; //default is edit
+    private final String comment;
+    private final long timestamp;
+    private final String userName;
+    private final List<SurroundSCMAffectedFile> files = new ArrayList<SurroundSCMAffectedFile>(1);
 
-    public SurroundSCMChangeLogSetEntry(String filePath, String comment, String version, String action, String date,
-                                        ChangeLogSet parent,  String userName, String email )
+    /**
+     * Creates a transaction without files, see {@link #addFile(String, String, String)}.
+     */
+    public SurroundSCMChangeLogSetEntry(String comment, String date, ChangeLogSet parent, String userName, String email)
+    {
+      this(comment, toTimestamp(parent, date), parent, userName, email);
+    }
+
+    SurroundSCMChangeLogSetEntry(String comment, long timestamp, ChangeLogSet parent, String userName, String email)
     {
-      this.affectedFile = filePath;
       this.comment = comment;
-      this.version = version;
-      this.action = action;
-      this.date = date;
-      this.user = User.get(userName);
+      this.timestamp = timestamp;
+      this.userName = intern(parent, userName);
 
-      // Check to see if we were able to parse an email address...
-      if(!email.isEmpty())
+      // The Jenkins user is resolved on first use, its email address later in the background.
+      if(parent instanceof SurroundSCMChangeLogSet)
       {
-        Mailer.UserProperty userMailer = user.getProperty(Mailer.UserProperty.class);
-        // Now... if the Jenkin's "User" either doesn't have an email address, or they have never explicitly
-        // set the email address, supply our own email address for the user.
-        if(userMailer == null || !userMailer.hasExplicitlyConfiguredAddress())
-        {
-          userMailer = new Mailer.UserProperty(email);
-          try {
-            user.addProperty(userMailer);
-          } catch (IOException e) {
-            e.printStackTrace();
-          }
-        }
+        ((SurroundSCMChangeLogSet) parent).addEmail(this.userName, email);
       }
       setParent(parent);
     }
 
+    /**
+     * Copies a transaction into another change set, the files are shared.
+     */
+    SurroundSCMChangeLogSetEntry(SurroundSCMChangeLogSetEntry source, ChangeLogSet parent)
+    {
+      this.comment = source.comment;
+      this.timestamp = source.timestamp;
+      this.userName = source.userName;
+      files.addAll(source.files);
+      setParent(parent);
+    }
+
+    public SurroundSCMChangeLogSetEntry(String filePath, String comment, String version, String action, String date,
+                                        ChangeLogSet parent,  String userName, String email )
+    {
+      this(comment, date, parent, userName, email);
+      addFile(filePath, version, action);
+    }
+
     @Deprecated
     public SurroundSCMChangeLogSetEntry(String filePath, String comment, String version, String action, String date,
                                         ChangeLogSet parent,  String userName)
     {
-      this.affectedFile = filePath;
-      this.comment = comment;
-      this.version = version;
-      this.action = action;
-      this.date = date;
-      this.user = User.get(userName);
-      setParent(parent);
+      this(filePath, comment, version, action, date, parent, userName, "");
     }
 
-    @Override
-    public String getMsg() {
-      String format = "File: %s Action: %s Version: %s Comment: %s";
-      return String.format(format, affectedFile, action, version, comment);
+    /**
+     * Adds a file version checked in by this transaction.
+     */
+    public void addFile(String filePath, String version, String action) {
+      int slash = filePath.lastIndexOf('/');
+      addFile(slash < 0 ? "" : filePath.substring(0, slash), filePath.substring(slash + 1),
+              SurroundSCMAffectedFile.parseVersion(version), action);
+    }
 
+    /**
+     * Adds a file version checked in by this transaction.
+     *
+     * @param repository Repository path of the file
+     * @param filename   Name of the file
+     * @param version    Version of the file, -1 if unknown
+     * @param action     Surround SCM action
+     */
+    void addFile(String repository, String filename, int version, String action) {
+      files.add(new SurroundSCMAffectedFile(intern(getParent(), repository), filename, version,
+              intern(getParent(), action)));
     }
 
     @Override
-    public String getMsgAnnotated() {
-      return affectedFile;
+    public String getMsg() {
+      return comment;
     }
 
+    /**
+     * @return Returns the version of the first file, use {@link #getAffectedFiles()} for all of them.
+     */
     public String getVersion() {
-      return version;
+      return files.isEmpty() ? null : files.get(0).getVersion();
     }
 
+    /**
+     * @return Returns the path of the first file, use {@link #getAffectedFiles()} for all of them.
+     */
     public String getName() {
-      return affectedFile;
+      return getPath();
     }
 
-		public String getAffectedFile(){
-			return affectedFile;
-		}
+    /**
+     * @return Returns the path of the first file, use {@link #getAffectedFiles()} for all of them.
+     */
+    public String getAffectedFile(){
+      return getPath();
+    }
 
+    /**
+     * @return Returns the action of the first file, use {@link #getAffectedFiles()} for all of them.
+     */
     public String getAction() {
-      return action;
+      return files.isEmpty() ? null : files.get(0).getAction();
     }
 
     public String getComment() {
       return comment;
     }
 
+    /**
+     * @return Returns the Surround SCM user name of the check-in.
+     */
+    String getUserName() {
+      return userName;
+    }
+
+    /**
+     * @return Returns the date of the check-in formatted as {@link SurroundSCMChangeRecord#DATE_FORMAT}, empty if it
+     *         is unknown.
+     */
     public String getDate() {
-      return date;
+      if (timestamp < 0) {
+        return "";
+      }
+      return formatDate(getParent(), timestamp);
+    }
+
+    @Override
+    public long getTimestamp() {
+      return timestamp;
     }
 
     @Override
     public Collection<String> getAffectedPaths() {
-      Collection<String> col = new ArrayList<String>();
-      col.add(affectedFile);
-      return col;
+      if (files.size() == 1) {
+        return Collections.singletonList(files.get(0).getPath());
+      }
+      return new AbstractList<String>() {
+        @Override
+        public String get(int index) {
+          return files.get(index).getPath();
+        }
+
+        @Override
+        public int size() {
+          return files.size();
+        }
+      };
+    }
+
+    @Override
+    @Exported
+    public Collection<SurroundSCMAffectedFile> getAffectedFiles() {
+      return Collections.unmodifiableList(files);
     }
 
     @Override
     public User getAuthor() {
+      if (userName == null)
+        return User.getUnknown();
+      ChangeLogSet<?> parent = getParent();
+      User user = parent instanceof SurroundSCMChangeLogSet
+              ? ((SurroundSCMChangeLogSet) parent).getUser(userName) : User.get(userName);
       if (user ==  null)
         return User.getUnknown();
       return user;
     }
 
+    /**
+     * @return Returns the edit type of the first file, use {@link #getAffectedFiles()} for all of them.
+     */
+    public EditType getEditType() {
+      return files.isEmpty() ? EditType.EDIT : files.get(0).getEditType();
+    }
+
+    /**
+     * @return Returns the path of the first file, use {@link #getAffectedFiles()} for all of them.
+     */
+    public String getPath() {
+      return files.isEmpty() ? null : files.get(0).getPath();
+    }
+  }
+
+  /**
+   * One file version of a {@link SurroundSCMChangeLogSetEntry}.
+   */
+  @ExportedBean(defaultVisibility = 999)
+  public static class SurroundSCMAffectedFile implements ChangeLogSet.AffectedFile {
+    private final String repository;
+    private final String filename;
+    private final int version;
+    private final String action;
+
+    public SurroundSCMAffectedFile(String path, String version, String action) {
+      this(path.lastIndexOf('/') < 0 ? "" : path.substring(0, path.lastIndexOf('/')),
+              path.substring(path.lastIndexOf('/') + 1), parseVersion(version), action);
+    }
+
+    SurroundSCMAffectedFile(String repository, String filename, int version, String action) {
+      this.repository = repository;
+      this.filename = filename;
+      this.version = version;
+      this.action = action;
+    }
+
+    /**
+     * @return Returns the number, or -1 if the version is not a number.
+     */
+    static int parseVersion(String version) {
+      try {
+        return Integer.parseInt(version);
+      } catch (NumberFormatException e) {
+        return -1;
+      }
+    }
+
+    /**
+     * @return Returns the repository path and the file name joined by '/'.
+     */
+    @Exported
+    public String getPath() {
+      return repository.isEmpty() ? filename : repository.concat("/").concat(filename);
+    }
+
+    public String getRepository() {
+      return repository;
+    }
+
+    public String getFilename() {
+      return filename;
+    }
+
+    /**
+     * @return Returns the version, empty if it is unknown.
+     */
+    @Exported
+    public String getVersion() {
+      return version < 0 ? "" : Integer.toString(version);
+    }
+
+    /**
+     * @return Returns the version, -1 if it is unknown.
+     */
+    public int getVersionNumber() {
+      return version;
+    }
+
+    @Exported
+    public String getAction() {
+      return action;
+    }
+
     @Exported
     public EditType getEditType() {
       if (action.equalsIgnoreCase("delete") || action.equalsIgnoreCase("remove"))
@@ -152,10 +639,5 @@ public final class SurroundSCMChangeLogSet extends ChangeLogSet<SurroundSCMChang
       }
       return EditType.EDIT;
     }
-
-    @Exported
-    public String getPath() {
-      return affectedFile;
-    }
   }
 }
@@ -0,0 +1,231 @@
+package hudson.scm;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * One file record of the Surround SCM CLI's "CruiseControl" ('cc') output.
+ * ex: {@code <Mainline/Repository/Path/To/File><Filename.txt><21><Check in><20161103144114><Comment for the action><LastName, FirstName><email@address.com> }
+ * <p>
+ * Unlike {@link SurroundSCMChangeLogSet.SurroundSCMChangeLogSetEntry} this is a plain value object, it does not touch
+ * Jenkins users, so it is cheap enough to build while polling.
+ */
+public final class SurroundSCMChangeRecord {
+
+  /**
+   * Format of the date field, it is also the format used for the 'cc' date range.
+   */
+  public final static String DATE_FORMAT = "yyyyMMddHHmmss";
+
+  private final String repository;
+  private final String filename;
+  private final String version;
+  private final String action;
+  private final String date;
+  private final String comment;
+  private final String userName;
+  private final String email;
+
+  public SurroundSCMChangeRecord(String repository, String filename, String version, String action, String date,
+                                 String comment, String userName, String email) {
+    this.repository = repository;
+    this.filename = filename;
+    this.version = version;
+    this.action = action;
+    this.date = date;
+    this.comment = comment;
+    this.userName = userName;
+    this.email = email;
+  }
+
+  /**
+   * Parses a 'CruiseControl' formatted line. Callers parsing many lines should keep a
+   * {@link SurroundSCMChangeLineTokenizer} and use {@link #parse(SurroundSCMChangeLineTokenizer, CharSequence)}.
+   *
+   * @param cruiseControlLine Line to parse
+   * @return Returns the parsed record, or 'null' if the line is not a file record (ex. the 'total' line).
+   */
+  public static SurroundSCMChangeRecord parse(String cruiseControlLine) {
+    return parse(new SurroundSCMChangeLineTokenizer(), cruiseControlLine);
+  }
+
+  /**
+   * Parses a 'CruiseControl' formatted line with a reused tokenizer.
+   * <p>
+   * The SSCM 'cruisecontrol' output does not escape "&lt;&gt;" inside the "&lt;...&gt;" blocks. The tokenizer finds
+   * the fields around the comment from both ends of the line, so only the comment may contain them.
+   *
+   * @param tokenizer         Tokenizer to use
+   * @param cruiseControlLine Line to parse
+   * @return Returns the parsed record, or 'null' if the line is not a file record (ex. the 'total' line).
+   */
+  static SurroundSCMChangeRecord parse(SurroundSCMChangeLineTokenizer tokenizer, CharSequence cruiseControlLine) {
+    return tokenizer.tokenize(cruiseControlLine) ? tokenizer.toRecord() : null;
+  }
+
+  public String getRepository() {
+    return repository;
+  }
+
+  public String getFilename() {
+    return filename;
+  }
+
+  /**
+   * @return Returns the repository path and the file name joined by '/'.
+   */
+  public String getPath() {
+    return repository.concat("/").concat(filename);
+  }
+
+  public String getVersion() {
+    return version;
+  }
+
+  public String getAction() {
+    return action;
+  }
+
+  /**
+   * @return Returns the raw date field, formatted as {@link #DATE_FORMAT}.
+   */
+  public String getDate() {
+    return date;
+  }
+
+  public String getComment() {
+    return comment;
+  }
+
+  public String getUserName() {
+    return userName;
+  }
+
+  public String getEmail() {
+    return email;
+  }
+
+  /**
+   * Checks if this record happened at or after the passed in {@link #DATE_FORMAT} formatted date. Both dates are
+   * fixed width digit strings, so comparing them as strings is the same as comparing them as dates.
+   *
+   * @param formattedDate Date formatted as {@link #DATE_FORMAT}
+   * @return Returns 'true' if the record is not older than the passed in date.
+   */
+  public boolean isAtOrAfter(String formattedDate) {
+    return date.compareTo(formattedDate) >= 0;
+  }
+
+  /**
+   * @return Returns the date field as a {@link Date}, or 'null' if it could not be parsed.
+   */
+  public Date getParsedDate() {
+    return parseDate(date);
+  }
+
+  /**
+   * @param formattedDate Date formatted as {@link #DATE_FORMAT}
+   * @return Returns the parsed date, or 'null' if it could not be parsed.
+   */
+  public static Date parseDate(String formattedDate) {
+    try {
+      return new SimpleDateFormat(DATE_FORMAT).parse(formattedDate);
+    } catch (ParseException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Keeps the records at or after the passed in date.
+   *
+   * @param records Records to filter
+   * @param from    First instant of interest
+   * @return Returns the records that happened at or after 'from'.
+   */
+  public static List<SurroundSCMChangeRecord> since(List<SurroundSCMChangeRecord> records, Date from) {
+    String formattedFrom = new SimpleDateFormat(DATE_FORMAT).format(from);
+    List<SurroundSCMChangeRecord> result = new ArrayList<>(records.size());
+    for (SurroundSCMChangeRecord record : records) {
+      if (record.isAtOrAfter(formattedFrom)) {
+        result.add(record);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Streams 'cc' output into a list of records. Lines that are not file records are ignored.
+   */
+  public static class Collector extends SurroundSCMLineOutputStream {
+    private final SurroundSCMChangeLineTokenizer tokenizer = new SurroundSCMChangeLineTokenizer();
+    private final List<SurroundSCMChangeRecord> records = new ArrayList<>();
+    private final int limit;
+    private boolean overflow;
+
+    public Collector() {
+      this(Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param limit Stops collecting once more than this many records were seen, see {@link #isOverflow()}.
+     */
+    public Collector(int limit) {
+      this.limit = limit;
+    }
+
+    @Override
+    protected boolean onLine(String line) {
+      SurroundSCMChangeRecord record = parse(tokenizer, line);
+      if (record != null) {
+        if (records.size() >= limit) {
+          overflow = true;
+          return false;
+        }
+        records.add(record);
+      }
+      return true;
+    }
+
+    public List<SurroundSCMChangeRecord> getRecords() {
+      return Collections.unmodifiableList(records);
+    }
+
+    /**
+     * @return Returns 'true' if there were more records than the limit, {@link #getRecords()} is then incomplete.
+     */
+    public boolean isOverflow() {
+      return overflow;
+    }
+  }
+
+  /**
+   * Streams 'cc' output and remembers the newest record date, without keeping the records.
+   */
+  public static class NewestDateTracker extends SurroundSCMLineOutputStream {
+    private final SurroundSCMChangeLineTokenizer tokenizer = new SurroundSCMChangeLineTokenizer();
+    private String newest;
+
+    @Override
+    protected boolean onLine(String line) {
+      if (tokenizer.tokenize(line)
+              && (newest == null || tokenizer.compareField(SurroundSCMChangeLineTokenizer.DATE, newest) > 0)) {
+        newest = tokenizer.field(SurroundSCMChangeLineTokenizer.DATE);
+      }
+      return true;
+    }
+
+    /**
+     * @return Returns the newest record date, or null if no record was seen or it could not be parsed.
+     */
+    public Date getNewestDate() {
+      if (newest == null) {
+        return null;
+      }
+      return parseDate(newest);
+    }
+  }
+}
@@ -0,0 +1,217 @@
+package hudson.scm;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.annotation.Nonnull;
+
+import hudson.Util;
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+
+/**
+ * Per node content-addressed store of file versions below '&lt;node root&gt;/sscm-store': every distinct file content
+ * is kept once, as a read-only '&lt;first two hash characters&gt;/&lt;SHA-256&gt;', and the workspaces populated from the
+ * {@link SurroundSCMSnapshotCache} are hardlinks to these objects. Disk usage of the workspaces then grows with the
+ * number of distinct versions, not with the number of branches and workspaces. Objects are copies, never links, of
+ * the cache files, as 'sscm get' may rewrite those in place.
+ * <p>
+ * For each cache directory an index records the repository path, size, modification time and hash of every file, so
+ * a file is only hashed again after 'sscm get' replaced it. The CLI does not report per file versions on a get, so
+ * the content hash stands in for the version.
+ * <p>
+ * Instances work on the local file system and are meant to be used inside a file callable on the node.
+ */
+final class SurroundSCMContentStore {
+  static final String DIRECTORY_NAME = "sscm-store";
+
+  private final Path root;
+  private final Path indexFile;
+  private final Map<String, Entry> previous;
+  private final Map<String, Entry> current = new HashMap<>();
+
+  /**
+   * @param root      Root directory of the store
+   * @param indexFile Index of the cache directory being populated, loaded if it exists
+   */
+  SurroundSCMContentStore(@Nonnull Path root, @Nonnull Path indexFile) throws IOException {
+    this.root = root;
+    this.indexFile = indexFile;
+    this.previous = load(indexFile);
+  }
+
+  /**
+   * Makes sure the content of the file is in the store. The file itself is left alone.
+   *
+   * @param path  Path of the file relative to the cache directory
+   * @param file  The file in the cache directory
+   * @param attrs Attributes of the file
+   * @return Returns the store object holding the content
+   */
+  @Nonnull
+  Path intern(@Nonnull String path, @Nonnull Path file, @Nonnull BasicFileAttributes attrs) throws IOException {
+    Entry entry = previous.get(path);
+    String hash = entry != null && entry.matches(attrs) ? entry.hash : hash(file);
+    Path object = root.resolve(hash.substring(0, 2)).resolve(hash);
+
+    if (!Files.exists(object)) {
+      Files.createDirectories(object.getParent());
+      // Copied under a temporary name so a concurrent populate never links to a partial object.
+      Path temp = Files.createTempFile(object.getParent(), hash, ".tmp");
+      try {
+        Files.copy(file, temp, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+        temp.toFile().setReadOnly();
+        Files.move(temp, object, StandardCopyOption.ATOMIC_MOVE);
+      } catch (FileAlreadyExistsException e) {
+        // another populate stored the same content meanwhile
+      } finally {
+        if (Files.exists(temp)) {
+          temp.toFile().setWritable(true);
+          Files.delete(temp);
+        }
+      }
+    }
+
+    current.put(path, new Entry(attrs.size(), attrs.lastModifiedTime().toMillis(), hash));
+    return object;
+  }
+
+  /**
+   * Writes the index with the files interned during this pass, files that disappeared are dropped.
+   */
+  void save() throws IOException {
+    Files.createDirectories(indexFile.getParent());
+    try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+            new GZIPOutputStream(Files.newOutputStream(indexFile)), StandardCharsets.UTF_8))) {
+      for (Map.Entry<String, Entry> entry : current.entrySet()) {
+        Entry value = entry.getValue();
+        writer.write(value.hash + "\t" + value.size + "\t" + value.lastModified + "\t" + entry.getKey() + "\n");
+      }
+    }
+  }
+
+  private static Map<String, Entry> load(Path indexFile) throws IOException {
+    Map<String, Entry> entries = new HashMap<>();
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+            new GZIPInputStream(Files.newInputStream(indexFile)), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        String[] fields = line.split("\t", 4);
+        if (fields.length == 4) {
+          entries.put(fields[3], new Entry(Long.parseLong(fields[1]), Long.parseLong(fields[2]), fields[0]));
+        }
+      }
+    } catch (NoSuchFileException e) {
+      // first use of the cache directory
+    } catch (IOException | NumberFormatException e) {
+      entries.clear(); // a damaged index only costs hashing everything again
+    }
+    return entries;
+  }
+
+  private static String hash(Path file) throws IOException {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IOException(e);
+    }
+    byte[] buffer = new byte[64 * 1024];
+    try (InputStream in = Files.newInputStream(file)) {
+      int read;
+      while ((read = in.read(buffer)) > 0) {
+        digest.update(buffer, 0, read);
+      }
+    }
+    return Util.toHexString(digest.digest());
+  }
+
+  private static final class Entry {
+    private final long size;
+    private final long lastModified;
+    private final String hash;
+
+    Entry(long size, long lastModified, String hash) {
+      this.size = size;
+      this.lastModified = lastModified;
+      this.hash = hash;
+    }
+
+    boolean matches(BasicFileAttributes attrs) {
+      return size == attrs.size() && lastModified == attrs.lastModifiedTime().toMillis();
+    }
+  }
+
+  /**
+   * Deletes the store objects no workspace links to anymore, and temporary files left by an interrupted populate.
+   * Files whose links changed within {@link #GRACE_MILLIS} are kept, a running populate may be about to link them.
+   * Needs a file system reporting link counts, elsewhere nothing is pruned.
+   */
+  static final class Prune extends MasterToSlaveFileCallable<Long> {
+    private static final long serialVersionUID = 1L;
+    static final long GRACE_MILLIS = 10 * 60 * 1000L;
+
+    private final long graceMillis;
+
+    Prune(long graceMillis) {
+      this.graceMillis = graceMillis;
+    }
+
+    Prune() {
+      this(GRACE_MILLIS);
+    }
+
+    @Override
+    public Long invoke(File f, VirtualChannel channel) throws IOException {
+      if (!f.isDirectory()) {
+        return 0L;
+      }
+      final long[] pruned = new long[1];
+      final long cutoff = System.currentTimeMillis() - graceMillis;
+      Files.walkFileTree(f.toPath(), new SimpleFileVisitor<Path>() {
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+          Map<String, Object> unix;
+          try {
+            unix = Files.readAttributes(file, "unix:nlink,ctime", LinkOption.NOFOLLOW_LINKS);
+          } catch (UnsupportedOperationException | IllegalArgumentException e) {
+            return FileVisitResult.TERMINATE;
+          }
+          Object links = unix.get("nlink");
+          Object changed = unix.get("ctime");
+          if (links instanceof Integer && (Integer) links <= 1
+                  && changed instanceof FileTime && ((FileTime) changed).toMillis() <= cutoff) {
+            file.toFile().setWritable(true);
+            Files.delete(file);
+            pruned[0]++;
+          }
+          return FileVisitResult.CONTINUE;
+        }
+      });
+      return pruned[0];
+    }
+  }
+}
@@ -0,0 +1,163 @@
+package hudson.scm;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Keeps the per file lines of 'sscm get' out of the build log. Every line goes to a raw output stream (usually a
+ * gzipped side file of the build); file lines are only counted as fetched, replaced or skipped, while anything else
+ * (errors, warnings, messages of the plugin) is passed on to the build log as before.
+ * <p>
+ * A progress line is logged every {@link #PROGRESS_MILLIS} and a summary when the stream is closed.
+ */
+public class SurroundSCMGetOutputFilter extends SurroundSCMLineOutputStream {
+  public static final long PROGRESS_MILLIS = Long.getLong(SurroundSCMGetOutputFilter.class.getName() + ".progressMillis", 10000);
+
+  /**
+   * Prefix of the lines of a {@link SurroundSCMParallelCheckout} worker, ex. "[2] ".
+   */
+  private static final Pattern WORKER_PREFIX = Pattern.compile("^\\s*\\[\\d+\\]\\s+");
+
+  private final PrintStream log;
+  private final OutputStream raw;
+  private final String rawName;
+  private final long startedAt;
+  private long lastProgressAt;
+
+  private long fetched;
+  private long replaced;
+  private long skipped;
+  private long bytes;
+
+  /**
+   * @param log     Build log
+   * @param raw     Receives the full output, it is closed with this stream
+   * @param rawName Name of the raw output for the summary line
+   */
+  public SurroundSCMGetOutputFilter(@Nonnull PrintStream log, @Nonnull OutputStream raw, @Nonnull String rawName) {
+    this.log = log;
+    this.raw = raw;
+    this.rawName = rawName;
+    this.startedAt = System.currentTimeMillis();
+    this.lastProgressAt = startedAt;
+  }
+
+  @Override
+  protected synchronized boolean onLine(String line) throws IOException {
+    byte[] data = (line + "\n").getBytes(StandardCharsets.UTF_8);
+    raw.write(data);
+    bytes += data.length;
+
+    switch (classify(line)) {
+      case FETCHED:
+        fetched++;
+        break;
+      case REPLACED:
+        replaced++;
+        break;
+      case SKIPPED:
+        skipped++;
+        break;
+      default:
+        log.println(line);
+        break;
+    }
+
+    long now = System.currentTimeMillis();
+    if (now - lastProgressAt >= PROGRESS_MILLIS) {
+      lastProgressAt = now;
+      log.println("sscm get: " + describe() + " after " + (now - startedAt) / 1000 + " s");
+    }
+    return true;
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      super.close();
+    } finally {
+      raw.close();
+    }
+    synchronized (this) {
+      log.println("sscm get finished: " + describe() + ", full output (" + bytes + " bytes) in " + rawName);
+    }
+  }
+
+  private String describe() {
+    return (fetched + replaced + skipped) + " files (" + fetched + " fetched, " + replaced + " replaced, " + skipped
+            + " skipped)";
+  }
+
+  public synchronized long getFetched() {
+    return fetched;
+  }
+
+  public synchronized long getReplaced() {
+    return replaced;
+  }
+
+  public synchronized long getSkipped() {
+    return skipped;
+  }
+
+  /**
+   * @return Returns the number of bytes of output sscm produced.
+   */
+  public synchronized long getBytes() {
+    return bytes;
+  }
+
+  enum Kind { FETCHED, REPLACED, SKIPPED, OTHER }
+
+  private static final Map<String, Kind> STATUSES = new HashMap<>();
+
+  static {
+    for (String status : new String[]{"got", "gotten", "retrieved", "fetched"}) {
+      STATUSES.put(status, Kind.FETCHED);
+    }
+    for (String status : new String[]{"replaced", "overwritten"}) {
+      STATUSES.put(status, Kind.REPLACED);
+    }
+    for (String status : new String[]{"skipped", "current", "identical", "unchanged"}) {
+      STATUSES.put(status, Kind.SKIPPED);
+    }
+  }
+
+  /**
+   * Sorts a line of 'sscm get' output by its status word, which sscm puts after the file ("&lt;file&gt; version 3
+   * got") or, for some messages, before it ("Replaced: &lt;file&gt;"). Only whole words at either end count, so a
+   * file named 'errors/replaced.txt' does not change the result. A line starting with an error or a warning, or
+   * with no known status, is not counted and stays in the log. The prefix of a parallel checkout worker is ignored.
+   */
+  static Kind classify(String line) {
+    String[] words = WORKER_PREFIX.matcher(line).replaceFirst("").trim().split("\\s+");
+    if (words.length < 2) {
+      return Kind.OTHER;
+    }
+    String first = word(words[0]);
+    if (first.equals("error") || first.equals("warning") || first.equals("unable") || first.equals("cannot")) {
+      return Kind.OTHER;
+    }
+    Kind kind = STATUSES.get(word(words[words.length - 1]));
+    if (kind == null) {
+      kind = STATUSES.get(first);
+    }
+    return kind != null ? kind : Kind.OTHER;
+  }
+
+  private static String word(String token) {
+    String word = token.toLowerCase(Locale.ENGLISH);
+    while (!word.isEmpty() && ".:,;!".indexOf(word.charAt(word.length() - 1)) >= 0) {
+      word = word.substring(0, word.length() - 1);
+    }
+    return word;
+  }
+}
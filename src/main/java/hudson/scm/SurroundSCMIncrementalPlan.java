@@ -0,0 +1,188 @@
+package hudson.scm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+/**
+ * What an incremental checkout does with the records of the changelog 'cc': the files to delete from the workspace
+ * and the files to get, grouped by repository. Records are applied oldest first, so the latest action of each file
+ * wins.
+ * <p>
+ * The changes can't be applied incrementally, and a full get is required, when there are too many of them, when one
+ * of them renames, moves or shares an item (the 'cc' does not tell where it went) or when one of them is outside of
+ * the job's repository.
+ */
+final class SurroundSCMIncrementalPlan {
+  private final Map<String, List<String>> filesByRepository;
+  private final Map<String, String> updatedFiles;
+  private final List<String> deletedFiles;
+  private final String fullGetReason;
+
+  private SurroundSCMIncrementalPlan(Map<String, List<String>> filesByRepository, Map<String, String> updatedFiles,
+                                     List<String> deletedFiles, String fullGetReason) {
+    this.filesByRepository = filesByRepository;
+    this.updatedFiles = updatedFiles;
+    this.deletedFiles = deletedFiles;
+    this.fullGetReason = fullGetReason;
+  }
+
+  private static SurroundSCMIncrementalPlan fullGet(String reason) {
+    return new SurroundSCMIncrementalPlan(Collections.<String, List<String>>emptyMap(),
+            Collections.<String, String>emptyMap(), Collections.<String>emptyList(), reason);
+  }
+
+  /**
+   * Plans an incremental checkout.
+   *
+   * @param repository The job's repository
+   * @param scope      The job's sparse checkout scope, changes outside of it are ignored
+   * @param records    Records of the changelog 'cc' for the window since the baseline
+   * @param overflow   'true' if the 'cc' reported more than 'maxFiles' records, which were not all kept
+   * @param maxFiles   Most records an incremental checkout applies
+   * @return Returns the plan, see {@link #isFullGetRequired()}.
+   */
+  @Nonnull
+  static SurroundSCMIncrementalPlan plan(@Nonnull String repository, @Nonnull SurroundSCMRepositoryScope scope,
+                                         @Nonnull List<SurroundSCMChangeRecord> records, boolean overflow, int maxFiles) {
+    if (overflow) {
+      return fullGet("More than " + maxFiles + " changes since the last build");
+    }
+
+    List<SurroundSCMChangeRecord> sorted = new ArrayList<>(records);
+    sorted.sort(Comparator.comparing(SurroundSCMChangeRecord::getDate));
+    Map<String, SurroundSCMChangeRecord> latest = new LinkedHashMap<>();
+    for (SurroundSCMChangeRecord record : sorted) {
+      String relativeRepository = getRelativeRepository(repository, record.getRepository());
+      if (!scope.isEmpty() && relativeRepository != null && !scope.contains(record, repository)) {
+        continue;
+      }
+      // 'Remove' contains 'move', it is a plain delete.
+      String action = record.getAction().toLowerCase(Locale.ENGLISH);
+      if (!isDeleteAction(action)
+              && (action.contains("rename") || action.contains("move") || action.contains("share"))) {
+        return fullGet("Found a '" + record.getAction() + "' of " + record.getPath());
+      }
+      if (relativeRepository == null) {
+        return fullGet("Found a change outside of the repository (" + record.getPath() + ")");
+      }
+      latest.remove(record.getPath());
+      latest.put(record.getPath(), record);
+    }
+
+    Map<String, List<String>> filesByRepository = new TreeMap<>();
+    Map<String, String> updatedFiles = new HashMap<>();
+    List<String> deletedFiles = new ArrayList<>();
+    for (SurroundSCMChangeRecord record : latest.values()) {
+      String relativeRepository = getRelativeRepository(repository, record.getRepository());
+      String relativePath = relativeRepository.isEmpty() ? record.getFilename()
+              : relativeRepository + "/" + record.getFilename();
+      if (isDeleteAction(record.getAction())) {
+        deletedFiles.add(relativePath);
+      } else {
+        filesByRepository.computeIfAbsent(record.getRepository(), k -> new ArrayList<>()).add(record.getFilename());
+        updatedFiles.put(relativePath, record.getVersion());
+      }
+    }
+    return new SurroundSCMIncrementalPlan(filesByRepository, updatedFiles, deletedFiles, null);
+  }
+
+  /**
+   * @return Returns 'true' if the changes can't be applied incrementally.
+   */
+  boolean isFullGetRequired() {
+    return fullGetReason != null;
+  }
+
+  /**
+   * @return Returns why a full get is required, or null if it is not.
+   */
+  @CheckForNull
+  String getFullGetReason() {
+    return fullGetReason;
+  }
+
+  /**
+   * @return Returns the names of the files to get, by repository as reported by sscm.
+   */
+  @Nonnull
+  Map<String, List<String>> getFilesByRepository() {
+    return Collections.unmodifiableMap(filesByRepository);
+  }
+
+  /**
+   * @return Returns the versions of the files to get, by path relative to the workspace.
+   */
+  @Nonnull
+  Map<String, String> getUpdatedFiles() {
+    return Collections.unmodifiableMap(updatedFiles);
+  }
+
+  /**
+   * @return Returns the paths relative to the workspace of the files to delete.
+   */
+  @Nonnull
+  List<String> getDeletedFiles() {
+    return Collections.unmodifiableList(deletedFiles);
+  }
+
+  /**
+   * Splits the file names of a repository into batches for separate 'sscm get's, so no command line gets too long.
+   *
+   * @param fileNames File names of one repository, see {@link #getFilesByRepository()}
+   * @param maxChars  Most characters of file names in a batch, counting a quote pair and a separator per name. A
+   *                  longer name gets a batch of its own.
+   * @return Returns the batches, in the order of the names.
+   */
+  @Nonnull
+  static List<List<String>> split(@Nonnull List<String> fileNames, int maxChars) {
+    List<List<String>> batches = new ArrayList<>();
+    List<String> batch = new ArrayList<>();
+    int chars = 0;
+    for (String fileName : fileNames) {
+      int length = fileName.length() + 3;
+      if (!batch.isEmpty() && chars + length > maxChars) {
+        batches.add(batch);
+        batch = new ArrayList<>();
+        chars = 0;
+      }
+      batch.add(fileName);
+      chars += length;
+    }
+    if (!batch.isEmpty()) {
+      batches.add(batch);
+    }
+    return batches;
+  }
+
+  /**
+   * @param repository     The job's repository
+   * @param fullRepository A repository path as reported by sscm
+   * @return Returns the path relative to the job's repository ("" for the repository itself), or null if it is not
+   *         below the job's repository.
+   */
+  @CheckForNull
+  static String getRelativeRepository(@Nonnull String repository, @Nonnull String fullRepository) {
+    if (fullRepository.equals(repository)) {
+      return "";
+    }
+    if (fullRepository.startsWith(repository + "/")) {
+      return fullRepository.substring(repository.length() + 1);
+    }
+    return null;
+  }
+
+  static boolean isDeleteAction(String action) {
+    return action.equalsIgnoreCase("delete") || action.equalsIgnoreCase("remove")
+            || action.equalsIgnoreCase("destroy");
+  }
+}
@@ -0,0 +1,106 @@
+package hudson.scm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * {@link OutputStream} that splits whatever the Surround SCM CLI writes to stdout into lines and hands them to
+ * {@link #onLine(String)} as they arrive. Nothing is written to disk.
+ * <p>
+ * Once {@link #onLine(String)} returns 'false' the rest of the output is discarded without being decoded, so callers
+ * that only care about the first few lines (ex. the 'cc' total) do not pay for the rest.
+ */
+public abstract class SurroundSCMLineOutputStream extends OutputStream {
+  private final LineBuffer buffer = new LineBuffer();
+  private final Charset charset;
+  private boolean done;
+
+  protected SurroundSCMLineOutputStream() {
+    this(StandardCharsets.UTF_8);
+  }
+
+  protected SurroundSCMLineOutputStream(Charset charset) {
+    this.charset = charset;
+  }
+
+  /**
+   * Called once per line of output, without the line terminator.
+   *
+   * @param line Line of output
+   * @return Returns 'true' to keep receiving lines, 'false' to ignore the rest of the output.
+   * @throws IOException Implementations may fail while processing the line.
+   */
+  protected abstract boolean onLine(String line) throws IOException;
+
+  /**
+   * @return Returns 'true' once the consumer has asked to stop receiving lines.
+   */
+  public boolean isDone() {
+    return done;
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    if (done) {
+      return;
+    }
+    if (b == '\n') {
+      eol();
+    } else {
+      buffer.write(b);
+    }
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    int start = off;
+    int end = off + len;
+    for (int i = off; i < end && !done; i++) {
+      if (b[i] == '\n') {
+        buffer.write(b, start, i - start);
+        eol();
+        start = i + 1;
+      }
+    }
+    if (!done && start < end) {
+      buffer.write(b, start, end - start);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (!done && buffer.size() > 0) {
+      eol();
+    }
+    done = true;
+    super.close();
+  }
+
+  private void eol() throws IOException {
+    String line = buffer.decode(charset);
+    buffer.reset();
+    if (!onLine(line)) {
+      done = true;
+    }
+  }
+
+  /**
+   * Line buffer that is reused for every line and decoded in place.
+   */
+  private static final class LineBuffer extends ByteArrayOutputStream {
+    LineBuffer() {
+      super(256);
+    }
+
+    /**
+     * @return Returns the buffered bytes as a string, without a trailing '\r'.
+     */
+    String decode(Charset charset) {
+      int length = count > 0 && buf[count - 1] == '\r' ? count - 1 : count;
+      return new String(buf, 0, length, charset);
+    }
+  }
+}
@@ -0,0 +1,106 @@
+package hudson.scm;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.model.Node;
+import hudson.slaves.NodeProperty;
+import hudson.slaves.NodePropertyDescriptor;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+/**
+ * Per node settings of the Surround SCM plugin, ex. to keep a job from starting more 'sscm' processes than the node
+ * can handle.
+ */
+public class SurroundSCMNodeProperty extends NodeProperty<Node> {
+  private int maxParallelCheckout;
+  private boolean snapshotCache;
+  private boolean snapshotCacheHardlinks;
+  private long snapshotCacheMaxSizeMb;
+  private boolean contentStore;
+
+  @DataBoundConstructor
+  public SurroundSCMNodeProperty() {
+  }
+
+  /**
+   * @return Returns the maximum number of concurrent 'sscm get' processes of one checkout, 0 for no limit.
+   */
+  public int getMaxParallelCheckout() {
+    return maxParallelCheckout;
+  }
+
+  @DataBoundSetter
+  public void setMaxParallelCheckout(int maxParallelCheckout) {
+    this.maxParallelCheckout = Math.max(0, maxParallelCheckout);
+  }
+
+  /**
+   * @return Returns 'true' if checkouts on this node go through the {@link SurroundSCMSnapshotCache}.
+   */
+  public boolean isSnapshotCache() {
+    return snapshotCache;
+  }
+
+  @DataBoundSetter
+  public void setSnapshotCache(boolean snapshotCache) {
+    this.snapshotCache = snapshotCache;
+  }
+
+  /**
+   * @return Returns 'true' if workspaces are populated from the cache with hardlinks instead of copies.
+   */
+  public boolean isSnapshotCacheHardlinks() {
+    return snapshotCacheHardlinks;
+  }
+
+  @DataBoundSetter
+  public void setSnapshotCacheHardlinks(boolean snapshotCacheHardlinks) {
+    this.snapshotCacheHardlinks = snapshotCacheHardlinks;
+  }
+
+  /**
+   * @return Returns the size the cache is trimmed to after each checkout, 0 for no limit.
+   */
+  public long getSnapshotCacheMaxSizeMb() {
+    return snapshotCacheMaxSizeMb;
+  }
+
+  @DataBoundSetter
+  public void setSnapshotCacheMaxSizeMb(long snapshotCacheMaxSizeMb) {
+    this.snapshotCacheMaxSizeMb = Math.max(0, snapshotCacheMaxSizeMb);
+  }
+
+  /**
+   * @return Returns 'true' if the snapshot cache and workspaces are hardlinked into a {@link SurroundSCMContentStore}.
+   */
+  public boolean isContentStore() {
+    return contentStore;
+  }
+
+  @DataBoundSetter
+  public void setContentStore(boolean contentStore) {
+    this.contentStore = contentStore;
+  }
+
+  /**
+   * @param workspace A workspace
+   * @return Returns the property of the node the workspace lives on, null if it has none.
+   */
+  @CheckForNull
+  public static SurroundSCMNodeProperty forWorkspace(@Nonnull FilePath workspace) {
+    return SSCMUtils.workspaceToNode(workspace).getNodeProperties().get(SurroundSCMNodeProperty.class);
+  }
+
+  @Extension
+  public static class DescriptorImpl extends NodePropertyDescriptor {
+    @Nonnull
+    @Override
+    public String getDisplayName() {
+      return "Surround SCM";
+    }
+  }
+}
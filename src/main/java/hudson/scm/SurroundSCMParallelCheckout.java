@@ -0,0 +1,148 @@
+package hudson.scm;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.annotation.Nonnull;
+
+import hudson.EnvVars;
+import hudson.Launcher;
+import hudson.Proc;
+import hudson.util.ArgumentListBuilder;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+/**
+ * Runs groups of 'sscm get' commands concurrently, one worker per group, the commands of a group one after another.
+ * <p>
+ * The output of every process is merged into one log line by line, each line prefixed with the worker number. The
+ * first failing command decides the result: the processes still running are killed and no further commands are
+ * started.
+ */
+final class SurroundSCMParallelCheckout {
+  private final Launcher launcher;
+  private final EnvVars environment;
+  private final PrintStream logger;
+
+  private final List<Proc> running = new ArrayList<>();
+  private boolean aborted;
+  private int result;
+
+  SurroundSCMParallelCheckout(@Nonnull Launcher launcher, @Nonnull EnvVars environment, @Nonnull PrintStream logger) {
+    this.launcher = launcher;
+    this.environment = environment;
+    this.logger = logger;
+  }
+
+  /**
+   * @param groups Commands per worker
+   * @return Returns 0 if all commands succeeded, otherwise the exit code of the first failing command
+   */
+  int run(@Nonnull List<List<ArgumentListBuilder>> groups) throws IOException, InterruptedException {
+    ExecutorService executor = Executors.newFixedThreadPool(groups.size(),
+            new NamingThreadFactory(new DaemonThreadFactory(), "SurroundSCM parallel checkout"));
+    try {
+      List<Future<?>> futures = new ArrayList<>(groups.size());
+      for (int i = 0; i < groups.size(); i++) {
+        final int worker = i + 1;
+        final List<ArgumentListBuilder> commands = groups.get(i);
+        futures.add(executor.submit(() -> {
+          runGroup(worker, commands);
+          return null;
+        }));
+      }
+      for (Future<?> future : futures) {
+        try {
+          future.get();
+        } catch (ExecutionException e) {
+          abort(-1);
+          Throwable cause = e.getCause();
+          if (cause instanceof IOException) {
+            throw (IOException) cause;
+          }
+          if (cause instanceof InterruptedException) {
+            throw (InterruptedException) cause;
+          }
+          throw new IOException("Parallel checkout failed", cause);
+        }
+      }
+    } catch (InterruptedException e) {
+      abort(-1);
+      throw e;
+    } finally {
+      executor.shutdownNow();
+    }
+    synchronized (running) {
+      return result;
+    }
+  }
+
+  private void runGroup(int worker, List<ArgumentListBuilder> commands) throws IOException, InterruptedException {
+    for (ArgumentListBuilder cmd : commands) {
+      PrefixingOutputStream out = new PrefixingOutputStream("[" + worker + "] ");
+      try {
+        Proc proc;
+        synchronized (running) {
+          if (aborted) {
+            return;
+          }
+          proc = launcher.launch().cmds(cmd).envs(environment).stdout(out).start();
+          running.add(proc);
+        }
+        int cmdResult = proc.join();
+        synchronized (running) {
+          running.remove(proc);
+          if (aborted) {
+            return; // killed because another worker failed, that failure is the one reported
+          }
+        }
+        if (cmdResult != 0) {
+          synchronized (logger) {
+            logger.println("[" + worker + "] sscm get failed with exit code " + cmdResult + ", stopping the other workers.");
+          }
+          abort(cmdResult);
+          return;
+        }
+      } finally {
+        out.close();
+      }
+    }
+  }
+
+  private void abort(int cmdResult) throws IOException, InterruptedException {
+    List<Proc> toKill;
+    synchronized (running) {
+      if (aborted) {
+        return;
+      }
+      aborted = true;
+      result = cmdResult;
+      toKill = new ArrayList<>(running);
+    }
+    for (Proc proc : toKill) {
+      proc.kill();
+    }
+  }
+
+  private final class PrefixingOutputStream extends SurroundSCMLineOutputStream {
+    private final String prefix;
+
+    PrefixingOutputStream(String prefix) {
+      this.prefix = prefix;
+    }
+
+    @Override
+    protected boolean onLine(String line) {
+      synchronized (logger) {
+        logger.println(prefix + line);
+      }
+      return true;
+    }
+  }
+}
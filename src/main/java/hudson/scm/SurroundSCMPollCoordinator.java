@@ -0,0 +1,349 @@
+package hudson.scm;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Controller-wide coordinator for 'sscm cc' polling queries.
+ * <p>
+ * Polls are grouped by server, branch and credentials (see {@link SurroundSCM#getKey()} for the per-repository key).
+ * The first poll of a group opens a batch. If other jobs of the group are due to poll, because they polled it before
+ * but not in the last {@link #CACHE_MILLIS}, it waits up to {@link #BATCH_MILLIS} for them to join. The batch then
+ * runs a single recursive 'cc' at the deepest repository that contains every joined repository, starting at the
+ * oldest joined date. A poll whose date is more than {@link #MAX_WIDEN_MILLIS} older than the batch's does not join
+ * it, as that would make every poll of the batch wait for a much longer query. Polls that arrive while that query is running, or up to {@link #CACHE_MILLIS}
+ * after it finished, share its result when it covers their repository and date range.
+ * <p>
+ * Each poll only counts the records below its own repository and inside its own date range.
+ * <p>
+ * A job only goes through the coordinator once another job polled the same group within {@link #MEMBER_MILLIS}, see
+ * {@link #isShared(String, String)}. A job polling a group alone keeps streaming the 'total' line of its own 'cc'.
+ */
+public final class SurroundSCMPollCoordinator {
+
+  /**
+   * How long a completed query result may be reused by later polls.
+   */
+  static final long CACHE_MILLIS = Long.getLong(SurroundSCMPollCoordinator.class.getName() + ".cacheMillis", 30000L);
+
+  /**
+   * How long the first poll of a group waits for sibling polls to join its batch. 0 disables batching.
+   */
+  static final long BATCH_MILLIS = Long.getLong(SurroundSCMPollCoordinator.class.getName() + ".batchMillis", 1000L);
+
+  /**
+   * How long a job counts as polling a group after its last poll.
+   */
+  static final long MEMBER_MILLIS = Long.getLong(SurroundSCMPollCoordinator.class.getName() + ".memberMillis",
+          2 * 60 * 60 * 1000L);
+
+  /**
+   * How far back a joining poll may move the start date of a batch.
+   */
+  static final long MAX_WIDEN_MILLIS = Long.getLong(SurroundSCMPollCoordinator.class.getName() + ".maxWidenMillis",
+          24 * 60 * 60 * 1000L);
+
+  /**
+   * Set to 'true' to have every poll run its own query, as older versions of the plugin did.
+   */
+  static final boolean DISABLED = Boolean.getBoolean(SurroundSCMPollCoordinator.class.getName() + ".disabled");
+
+  private static final SurroundSCMPollCoordinator INSTANCE = new SurroundSCMPollCoordinator();
+
+  private final Map<String, List<SharedQuery>> queries = new HashMap<>();
+  private final Map<String, Map<String, Member>> members = new HashMap<>();
+  private final long batchMillis;
+  private final long cacheMillis;
+  private final long memberMillis;
+  private final long maxWidenMillis;
+
+  /**
+   * Runs the actual 'cc' for the passed in repository and date range.
+   */
+  public interface Query {
+    List<SurroundSCMChangeRecord> run(String repository, Date from, Date to) throws IOException, InterruptedException;
+  }
+
+  SurroundSCMPollCoordinator(long batchMillis, long cacheMillis, long memberMillis, long maxWidenMillis) {
+    this.batchMillis = batchMillis;
+    this.cacheMillis = cacheMillis;
+    this.memberMillis = memberMillis;
+    this.maxWidenMillis = maxWidenMillis;
+  }
+
+  SurroundSCMPollCoordinator(long batchMillis, long cacheMillis) {
+    this(batchMillis, cacheMillis, MEMBER_MILLIS, MAX_WIDEN_MILLIS);
+  }
+
+  private SurroundSCMPollCoordinator() {
+    this(BATCH_MILLIS, CACHE_MILLIS, MEMBER_MILLIS, MAX_WIDEN_MILLIS);
+  }
+
+  public static SurroundSCMPollCoordinator get() {
+    return INSTANCE;
+  }
+
+  public static boolean isEnabled() {
+    return !DISABLED;
+  }
+
+  /**
+   * Records that a job polls a group and tells whether other jobs poll it too.
+   *
+   * @param group  Identifies the server, branch and credentials, as passed to {@link #poll}.
+   * @param member Identifies the polling job, ex. its full name.
+   * @return Returns 'true' if another job polled the group within {@link #MEMBER_MILLIS}.
+   */
+  public boolean isShared(@Nonnull String group, @Nonnull String member) {
+    synchronized (queries) {
+      long now = System.currentTimeMillis();
+      Map<String, Member> forGroup = members.computeIfAbsent(group, k -> new HashMap<>());
+      forGroup.values().removeIf(other -> now - other.seen > memberMillis);
+      forGroup.computeIfAbsent(member, k -> new Member()).seen = now;
+      return forGroup.size() > 1;
+    }
+  }
+
+  /**
+   * Finds the changes below 'repository' between 'from' and 'to', sharing the server query with other polls of the
+   * same group.
+   *
+   * @param group      Identifies the server, branch and credentials. Only polls of the same group share queries.
+   * @param member     Identifies the polling job, as passed to {@link #isShared(String, String)}.
+   * @param repository Repository this poll is interested in.
+   * @param from       Start of the date range this poll is interested in.
+   * @param to         End of the date range this poll is interested in.
+   * @param query      Used to run the query if this poll ends up leading a batch.
+   * @param logger     Used to report whether the result was shared.
+   * @return Returns the records at or below 'repository' that happened at or after 'from'.
+   * @throws IOException          If the shared query failed.
+   * @throws InterruptedException If interrupted while waiting for the shared query.
+   */
+  public List<SurroundSCMChangeRecord> poll(@Nonnull String group, @Nonnull String member, @Nonnull String repository,
+                                            @Nonnull Date from, @Nonnull Date to, @Nonnull Query query,
+                                            @Nonnull PrintStream logger) throws IOException, InterruptedException {
+    SharedQuery shared = null;
+    boolean leader = false;
+    synchronized (queries) {
+      List<SharedQuery> forGroup = queries.computeIfAbsent(group, k -> new ArrayList<>());
+      long now = System.currentTimeMillis();
+      SharedQuery openBatch = null;
+      for (Iterator<SharedQuery> it = forGroup.iterator(); it.hasNext(); ) {
+        SharedQuery candidate = it.next();
+        if (candidate.isExpired(now, cacheMillis)) {
+          it.remove();
+        } else if (candidate.open && candidate.accepts(from, maxWidenMillis)) {
+          openBatch = candidate;
+        } else if (shared == null && candidate.covers(repository, from)) {
+          shared = candidate;
+        }
+      }
+      if (shared == null && openBatch != null) {
+        openBatch.join(repository, from, to);
+        shared = openBatch;
+        queries.notifyAll();
+      }
+      if (shared == null) {
+        shared = new SharedQuery(repository, from, to, 1 + countDueSiblings(group, member, now));
+        forGroup.add(shared);
+        leader = true;
+      }
+      members.computeIfAbsent(group, k -> new HashMap<>()).computeIfAbsent(member, k -> new Member()).served = now;
+    }
+
+    if (leader) {
+      try {
+        String batchRepository;
+        Date batchFrom;
+        Date batchTo;
+        int batchSize;
+        synchronized (queries) {
+          // Only wait while a sibling that is due to poll has not joined yet.
+          long deadline = System.currentTimeMillis() + batchMillis;
+          for (long left = batchMillis; shared.polls < shared.expected && left > 0;
+               left = deadline - System.currentTimeMillis()) {
+            queries.wait(left);
+          }
+          shared.open = false;
+          batchRepository = shared.repository;
+          batchFrom = shared.from;
+          batchTo = shared.to;
+          batchSize = shared.polls;
+        }
+        if (batchSize > 1) {
+          logger.println("Querying Surround SCM changes once for " + batchSize + " polls at repository [" + batchRepository + "]");
+        }
+        shared.complete(query.run(batchRepository, batchFrom, batchTo));
+      } catch (IOException | InterruptedException | RuntimeException e) {
+        // Failures are handed to the waiting polls but never cached.
+        forget(group, shared);
+        shared.fail(e);
+        throw e;
+      }
+    } else {
+      logger.println("Sharing the Surround SCM change query for repository [" + shared.repository + "]");
+    }
+
+    return filter(shared.await(), repository, from);
+  }
+
+  /**
+   * Keeps the records at or below the repository that happened at or after 'from'.
+   */
+  static List<SurroundSCMChangeRecord> filter(List<SurroundSCMChangeRecord> records, String repository, Date from) {
+    List<SurroundSCMChangeRecord> result = new ArrayList<>();
+    for (SurroundSCMChangeRecord record : SurroundSCMChangeRecord.since(records, from)) {
+      if (isSameOrBelow(record.getRepository(), repository)) {
+        result.add(record);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return Returns 'true' if 'repository' is 'ancestor' or one of its sub-repositories.
+   */
+  static boolean isSameOrBelow(String repository, String ancestor) {
+    return repository.equals(ancestor)
+            || (repository.startsWith(ancestor) && repository.charAt(ancestor.length()) == '/');
+  }
+
+  /**
+   * Finds the deepest repository containing both passed in repositories.
+   * ex. 'Mainline/A/X' and 'Mainline/B' gives 'Mainline'.
+   *
+   * @return Returns the common parent repository, or an empty string if they do not share a mainline.
+   */
+  static String commonAncestor(String first, String second) {
+    String[] a = first.split("/");
+    String[] b = second.split("/");
+    StringBuilder result = new StringBuilder();
+    for (int i = 0; i < a.length && i < b.length && a[i].equals(b[i]); i++) {
+      if (i > 0) {
+        result.append('/');
+      }
+      result.append(a[i]);
+    }
+    return result.toString();
+  }
+
+  /**
+   * @return Returns the number of other jobs of the group that polled it before, but not within the cache period.
+   */
+  private int countDueSiblings(String group, String member, long now) {
+    Map<String, Member> forGroup = members.get(group);
+    if (forGroup == null) {
+      return 0;
+    }
+    int due = 0;
+    for (Map.Entry<String, Member> other : forGroup.entrySet()) {
+      if (!other.getKey().equals(member) && now - other.getValue().seen <= memberMillis
+              && now - other.getValue().served > cacheMillis) {
+        due++;
+      }
+    }
+    return due;
+  }
+
+  private void forget(String group, SharedQuery shared) {
+    synchronized (queries) {
+      List<SharedQuery> forGroup = queries.get(group);
+      if (forGroup != null) {
+        forGroup.remove(shared);
+        if (forGroup.isEmpty()) {
+          queries.remove(group);
+        }
+      }
+    }
+  }
+
+  /**
+   * When a job last polled a group, and when it last got its result from a query.
+   */
+  private static final class Member {
+    private long seen;
+    private long served;
+  }
+
+  /**
+   * A batch while it is open, then a query in flight, then a cached result. Mutable fields are guarded by the
+   * coordinator's 'queries' lock.
+   */
+  private static final class SharedQuery {
+    private String repository;
+    private Date from;
+    private Date to;
+    private int polls = 1;
+    private final int expected;
+    private boolean open = true;
+    private final CompletableFuture<List<SurroundSCMChangeRecord>> result = new CompletableFuture<>();
+    private volatile long completedAt;
+
+    SharedQuery(String repository, Date from, Date to, int expected) {
+      this.repository = repository;
+      this.from = new Date(from.getTime());
+      this.to = new Date(to.getTime());
+      this.expected = expected;
+    }
+
+    boolean accepts(Date pollFrom, long maxWidenMillis) {
+      return from.getTime() - pollFrom.getTime() <= maxWidenMillis;
+    }
+
+    void join(String pollRepository, Date pollFrom, Date pollTo) {
+      String common = commonAncestor(repository, pollRepository);
+      if (!common.isEmpty()) {
+        repository = common;
+      }
+      if (pollFrom.before(from)) {
+        from = new Date(pollFrom.getTime());
+      }
+      if (pollTo.after(to)) {
+        to = new Date(pollTo.getTime());
+      }
+      polls++;
+    }
+
+    boolean covers(String pollRepository, Date pollFrom) {
+      return isSameOrBelow(pollRepository, repository) && !from.after(pollFrom) && !to.before(pollFrom);
+    }
+
+    boolean isExpired(long now, long cacheMillis) {
+      return completedAt != 0 && now - completedAt > cacheMillis;
+    }
+
+    void complete(List<SurroundSCMChangeRecord> records) {
+      completedAt = System.currentTimeMillis();
+      result.complete(records);
+    }
+
+    void fail(Throwable t) {
+      result.completeExceptionally(t);
+    }
+
+    List<SurroundSCMChangeRecord> await() throws IOException, InterruptedException {
+      try {
+        return result.get();
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException) {
+          throw new IOException("Shared Surround SCM change query failed: " + cause.getMessage(), cause);
+        }
+        if (cause instanceof InterruptedException) {
+          throw new IOException("Shared Surround SCM change query was interrupted", cause);
+        }
+        throw new IOException("Shared Surround SCM change query failed", cause);
+      }
+    }
+  }
+}
@@ -0,0 +1,188 @@
+package hudson.scm;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+
+import javax.annotation.Nonnull;
+
+import hudson.Extension;
+import hudson.model.Item;
+import hudson.model.listeners.ItemListener;
+
+/**
+ * Plugin-side polling scheduler used by jobs with adaptive polling enabled.
+ * <p>
+ * Jenkins polls every job on its cron spec, no matter how often its repository changes, so the Surround SCM server
+ * takes a burst of identical 'cc' calls at the top of each minute. This scheduler keeps a history per job, keyed by
+ * its full name: every quiet poll doubles the interval before the next real query, up to
+ * {@link #MAX_INTERVAL_MILLIS}, and a poll that finds changes resets it so busy repositories are queried on every
+ * cron tick. Slow queries stretch the interval further.
+ * <p>
+ * Jenkins starts the polls of all jobs sharing a cron spec in the same minute, and a poll only queries on the first
+ * tick after its due time. The next due time of a quiet job is therefore jittered by at least one tick
+ * ({@link #TICK_MILLIS}), so quiet jobs that were created together query in different minutes. Jobs that found
+ * changes stay due on every tick and still query together.
+ * <p>
+ * Polls that are not due yet report no changes without contacting the server, unless a check-in notification reset
+ * the job's history. Histories of deleted jobs are dropped and those of renamed jobs follow the new name.
+ */
+public final class SurroundSCMPollScheduler {
+
+  /**
+   * Interval after the first quiet poll, doubled for every further quiet poll.
+   */
+  static final long BASE_INTERVAL_MILLIS = Long.getLong(SurroundSCMPollScheduler.class.getName() + ".baseIntervalMillis", 60000L);
+
+  /**
+   * Longest interval between two real queries of a quiet repository.
+   */
+  static final long MAX_INTERVAL_MILLIS = Long.getLong(SurroundSCMPollScheduler.class.getName() + ".maxIntervalMillis", 900000L);
+
+  /**
+   * The interval is at least this many times the duration of the last query.
+   */
+  private static final int DURATION_FACTOR = 10;
+
+  /**
+   * Fraction of the interval used as jitter on the next due time.
+   */
+  private static final double JITTER_FRACTION = 0.1;
+
+  /**
+   * Resolution of the cron specs that trigger the polls, the jitter is at least this much.
+   */
+  static final long TICK_MILLIS = 60000L;
+
+  private static final SurroundSCMPollScheduler INSTANCE = new SurroundSCMPollScheduler(BASE_INTERVAL_MILLIS,
+          MAX_INTERVAL_MILLIS, new Random());
+
+  private final Map<String, History> histories = new HashMap<>();
+  private final long baseIntervalMillis;
+  private final long maxIntervalMillis;
+  private final Random random;
+
+  SurroundSCMPollScheduler(long baseIntervalMillis, long maxIntervalMillis, Random random) {
+    this.baseIntervalMillis = baseIntervalMillis;
+    this.maxIntervalMillis = maxIntervalMillis;
+    this.random = random;
+  }
+
+  public static SurroundSCMPollScheduler get() {
+    return INSTANCE;
+  }
+
+  /**
+   * @param key Full name of the polling job
+   * @param now Current time in milliseconds
+   * @return Returns 'true' if the job's repository should be queried now.
+   */
+  public synchronized boolean isDue(@Nonnull String key, long now) {
+    History history = histories.get(key);
+    return history == null || now >= history.nextDueAt;
+  }
+
+  /**
+   * @param key Full name of the polling job
+   * @return Returns when the job's repository is due next, 0 if it has no history.
+   */
+  public synchronized long getNextDueAt(@Nonnull String key) {
+    History history = histories.get(key);
+    return history == null ? 0 : history.nextDueAt;
+  }
+
+  /**
+   * Records the outcome of a real query and schedules the next one.
+   *
+   * @param key            Full name of the polling job
+   * @param startedAt      When the query started
+   * @param durationMillis How long the query took
+   * @param changed        Whether the query found changes
+   */
+  public synchronized void record(@Nonnull String key, long startedAt, long durationMillis, boolean changed) {
+    History history = histories.computeIfAbsent(key, k -> new History());
+    if (changed) {
+      history.quietPolls = 0;
+    } else {
+      history.quietPolls++;
+    }
+
+    long interval = 0;
+    if (history.quietPolls > 0) {
+      interval = baseIntervalMillis << Math.min(history.quietPolls - 1, 20);
+    }
+    interval = Math.max(interval, durationMillis * DURATION_FACTOR);
+    interval = Math.min(interval, maxIntervalMillis);
+
+    long jitter = 0;
+    if (interval > 0) {
+      // Never before the query that just ran, it is due on the next tick at the earliest.
+      long range = Math.min(interval, Math.max(TICK_MILLIS, (long) (interval * JITTER_FRACTION)));
+      jitter = (long) ((random.nextDouble() * 2 - 1) * range);
+    }
+    history.nextDueAt = startedAt + interval + jitter;
+  }
+
+  /**
+   * Drops the history of a job, so its next poll queries the server. Used when the server told us about a check-in.
+   *
+   * @param key Full name of the polling job
+   */
+  public synchronized void reset(@Nonnull String key) {
+    histories.remove(key);
+  }
+
+  /**
+   * Drops the histories of a job, or of all jobs of a folder.
+   *
+   * @param key Full name of the job or folder
+   */
+  public synchronized void forget(@Nonnull String key) {
+    histories.keySet().removeIf(name -> name.equals(key) || name.startsWith(key + "/"));
+  }
+
+  /**
+   * Moves the histories of a renamed or moved job, or of all jobs of a folder, to the new name.
+   *
+   * @param oldKey Previous full name of the job or folder
+   * @param newKey New full name of the job or folder
+   */
+  public synchronized void rename(@Nonnull String oldKey, @Nonnull String newKey) {
+    Map<String, History> moved = new HashMap<>();
+    for (Iterator<Map.Entry<String, History>> it = histories.entrySet().iterator(); it.hasNext(); ) {
+      Map.Entry<String, History> entry = it.next();
+      String name = entry.getKey();
+      if (name.equals(oldKey) || name.startsWith(oldKey + "/")) {
+        moved.put(newKey + name.substring(oldKey.length()), entry.getValue());
+        it.remove();
+      }
+    }
+    histories.putAll(moved);
+  }
+
+  /**
+   * @return Returns the number of jobs with a history.
+   */
+  synchronized int size() {
+    return histories.size();
+  }
+
+  private static final class History {
+    private int quietPolls;
+    private long nextDueAt;
+  }
+
+  @Extension
+  public static class PruningItemListener extends ItemListener {
+    @Override
+    public void onDeleted(Item item) {
+      get().forget(item.getFullName());
+    }
+
+    @Override
+    public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+      get().rename(oldFullName, newFullName);
+    }
+  }
+}
@@ -0,0 +1,146 @@
+package hudson.scm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Summary of a recursive 'sscm ls' of a repository: which files (and versions) live in it and how many of them are in
+ * the repository itself and below each of its sub-repositories. Used to split a checkout into balanced groups, see
+ * {@link #partition(Map, int)}, and to build the {@link SurroundSCMWorkspaceManifest}.
+ * <p>
+ * 'sscm ls' prints the full path of each repository on its own line, followed by one line per file (indented by a
+ * single space) and detail lines (indented by two spaces) that are ignored here. A file line holds the name, then
+ * columns separated by at least two spaces, the last of which is the version.
+ */
+public final class SurroundSCMRepositoryListing {
+  private static final Pattern FILE_LINE = Pattern.compile("^ (.+?)(?:\\s{2,}(.*))?$");
+  private static final Pattern VERSION = Pattern.compile("\\d+");
+
+  private final Map<String, Long> repositories = new TreeMap<>();
+  private final Map<String, String> files = new TreeMap<>();
+  private final Map<String, Long> subRepositories = new TreeMap<>();
+  private long rootFileCount;
+
+  private SurroundSCMRepositoryListing() {
+  }
+
+  /**
+   * @param repository Repository that was listed, ex. "Mainline/Project"
+   * @param output     Output of 'sscm ls -r'
+   * @return Returns the parsed listing
+   */
+  @Nonnull
+  public static SurroundSCMRepositoryListing parse(@Nonnull String repository, @Nonnull String output) {
+    SurroundSCMRepositoryListing listing = new SurroundSCMRepositoryListing();
+    String current = null;
+    for (String line : output.split("\r?\n")) {
+      if (line.trim().isEmpty() || line.startsWith("  ")) {
+        continue;
+      }
+      if (line.equals(repository)) {
+        current = "";
+        continue;
+      }
+      if (line.startsWith(repository + "/")) {
+        current = line.substring(repository.length() + 1);
+        listing.repositories.putIfAbsent(current, 0L);
+        listing.subRepositories.putIfAbsent(topLevel(current), 0L);
+        continue;
+      }
+      if (current == null) {
+        continue; // anything before the first repository line
+      }
+      Matcher matcher = FILE_LINE.matcher(line);
+      if (matcher.matches()) {
+        String name = matcher.group(1).trim();
+        String[] columns = matcher.group(2) != null ? matcher.group(2).trim().split("\\s+") : new String[0];
+        String version = columns.length > 0 && VERSION.matcher(columns[columns.length - 1]).matches()
+                ? columns[columns.length - 1] : "";
+        listing.files.put(current.isEmpty() ? name : current + "/" + name, version);
+      }
+      if (current.isEmpty()) {
+        listing.rootFileCount++;
+      } else {
+        listing.repositories.merge(current, 1L, Long::sum);
+        listing.subRepositories.merge(topLevel(current), 1L, Long::sum);
+      }
+    }
+    return listing;
+  }
+
+  private static String topLevel(String relative) {
+    int slash = relative.indexOf('/');
+    return slash < 0 ? relative : relative.substring(0, slash);
+  }
+
+  /**
+   * @return Returns the number of files directly in the listed repository.
+   */
+  public long getRootFileCount() {
+    return rootFileCount;
+  }
+
+  /**
+   * @return Returns the names of the top-level sub-repositories with the number of files below each of them.
+   */
+  public Map<String, Long> getSubRepositories() {
+    return Collections.unmodifiableMap(subRepositories);
+  }
+
+  /**
+   * @return Returns the paths (relative to the listed repository) of all sub-repositories, with the number of files
+   *         directly in each of them.
+   */
+  public Map<String, Long> getRepositories() {
+    return Collections.unmodifiableMap(repositories);
+  }
+
+  /**
+   * @return Returns the paths of all files relative to the listed repository, with their version ("" if the listing
+   *         did not show one).
+   */
+  public Map<String, String> getFiles() {
+    return Collections.unmodifiableMap(files);
+  }
+
+  /**
+   * Splits weighted items into at most {@code groups} groups with roughly equal total weight (largest item first
+   * into the currently lightest group).
+   *
+   * @param weights Items and their weights
+   * @param groups  Maximum number of groups
+   * @return Returns the non-empty groups, heaviest first
+   */
+  @Nonnull
+  public static List<List<String>> partition(@Nonnull Map<String, Long> weights, int groups) {
+    List<Map.Entry<String, Long>> items = new ArrayList<>(weights.entrySet());
+    items.sort(Map.Entry.<String, Long>comparingByValue(Comparator.reverseOrder()).thenComparing(Map.Entry.comparingByKey()));
+
+    int count = Math.max(1, Math.min(groups, items.size()));
+    List<List<String>> result = new ArrayList<>(count);
+    long[] totals = new long[count];
+    for (int i = 0; i < count; i++) {
+      result.add(new ArrayList<>());
+    }
+    for (Map.Entry<String, Long> item : items) {
+      int lightest = 0;
+      for (int i = 1; i < count; i++) {
+        if (totals[i] < totals[lightest]) {
+          lightest = i;
+        }
+      }
+      result.get(lightest).add(item.getKey());
+      totals[lightest] += item.getValue();
+    }
+    result.removeIf(List::isEmpty);
+    return result;
+  }
+}
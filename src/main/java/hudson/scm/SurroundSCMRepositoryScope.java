@@ -0,0 +1,257 @@
+package hudson.scm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+/**
+ * Sparse checkout scope: the sub-repositories of the job's repository to check out (all of them if none are
+ * included), minus the excluded ones. Paths are relative to the job's repository, ex. "core" or "web/static", one per
+ * line. Polling and the changelog ignore changes outside of the scope.
+ */
+public final class SurroundSCMRepositoryScope {
+  private final List<String> included;
+  private final List<String> excluded;
+
+  public SurroundSCMRepositoryScope(@CheckForNull String included, @CheckForNull String excluded) {
+    this.included = roots(paths(included));
+    this.excluded = paths(excluded);
+  }
+
+  /**
+   * @return Returns 'true' if the scope is the whole repository.
+   */
+  public boolean isEmpty() {
+    return included.isEmpty() && excluded.isEmpty();
+  }
+
+  /**
+   * @return Returns 'true' if some sub-repositories are excluded, so the checkout needs a listing of the repository.
+   */
+  public boolean hasExclusions() {
+    return !excluded.isEmpty();
+  }
+
+  /**
+   * @return Returns the included sub-repositories that are not below another included one, "" for the whole
+   *         repository.
+   */
+  @Nonnull
+  public List<String> getRoots() {
+    return included.isEmpty() ? Collections.singletonList("") : Collections.unmodifiableList(included);
+  }
+
+  /**
+   * @param relative Path of a repository relative to the job's repository, "" for the job's repository itself
+   * @return Returns 'true' if files directly in that repository are in scope.
+   */
+  public boolean contains(@Nonnull String relative) {
+    if (!included.isEmpty() && !isBelowAny(relative, included)) {
+      return false;
+    }
+    return !isBelowAny(relative, excluded);
+  }
+
+  /**
+   * @param record     A 'cc' record
+   * @param repository The job's repository
+   * @return Returns 'true' if the record is about a file in scope.
+   */
+  public boolean contains(@Nonnull SurroundSCMChangeRecord record, @Nonnull String repository) {
+    String full = record.getRepository();
+    if (full.equals(repository)) {
+      return contains("");
+    }
+    return full.startsWith(repository + "/") && contains(full.substring(repository.length() + 1));
+  }
+
+  /**
+   * Plans the 'sscm get' commands covering the scope. Roots without exclusions below them are fetched recursively,
+   * the others are split along the listing into non-recursive gets of the in-scope repositories on the way down and
+   * recursive gets of the subtrees without exclusions.
+   *
+   * @param listing Listing of the job's repository, only needed if {@link #hasExclusions()}
+   * @return Returns the gets, each with its weight in files (plus one for the process itself)
+   */
+  @Nonnull
+  public List<Get> plan(@CheckForNull SurroundSCMRepositoryListing listing) {
+    List<Get> gets = new ArrayList<>();
+    for (String root : getRoots()) {
+      plan(root, listing, gets);
+    }
+    return gets;
+  }
+
+  private void plan(String path, SurroundSCMRepositoryListing listing, List<Get> gets) {
+    if (isBelowAny(path, excluded)) {
+      return;
+    }
+    if (listing == null || !hasExcludedBelow(path)) {
+      gets.add(new Get(path, true, listing != null ? weight(path, listing) : 1));
+      return;
+    }
+    long files = path.isEmpty() ? listing.getRootFileCount() : listing.getRepositories().getOrDefault(path, 0L);
+    if (files > 0) {
+      gets.add(new Get(path, false, files + 1));
+    }
+    for (String child : listing.getRepositories().keySet()) {
+      if (isChild(child, path)) {
+        plan(child, listing, gets);
+      }
+    }
+  }
+
+  /**
+   * Splits each recursive get with sub-repositories into a non-recursive get of its own files and one recursive get
+   * per direct sub-repository, so the work can be spread over several processes.
+   *
+   * @param gets    Gets from {@link #plan(SurroundSCMRepositoryListing)}
+   * @param listing Listing of the job's repository
+   * @return Returns the split gets
+   */
+  @Nonnull
+  public static List<Get> split(@Nonnull List<Get> gets, @Nonnull SurroundSCMRepositoryListing listing) {
+    List<Get> result = new ArrayList<>();
+    for (Get get : gets) {
+      List<String> children = new ArrayList<>();
+      if (get.isRecursive()) {
+        for (String repository : listing.getRepositories().keySet()) {
+          if (isChild(repository, get.getPath())) {
+            children.add(repository);
+          }
+        }
+      }
+      if (children.isEmpty()) {
+        result.add(get);
+        continue;
+      }
+      long files = get.getPath().isEmpty() ? listing.getRootFileCount()
+              : listing.getRepositories().getOrDefault(get.getPath(), 0L);
+      if (files > 0) {
+        result.add(new Get(get.getPath(), false, files + 1));
+      }
+      for (String child : children) {
+        result.add(new Get(child, true, weight(child, listing)));
+      }
+    }
+    return result;
+  }
+
+  private boolean hasExcludedBelow(String path) {
+    for (String exclusion : excluded) {
+      if (isBelow(exclusion, path)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static long weight(String path, SurroundSCMRepositoryListing listing) {
+    long files = path.isEmpty() ? listing.getRootFileCount() : 0;
+    for (Map.Entry<String, Long> repository : listing.getRepositories().entrySet()) {
+      if (isBelow(repository.getKey(), path)) {
+        files += repository.getValue();
+      }
+    }
+    return files + 1;
+  }
+
+  private static boolean isChild(String child, String parent) {
+    if (parent.isEmpty()) {
+      return child.indexOf('/') < 0;
+    }
+    return child.startsWith(parent + "/") && child.indexOf('/', parent.length() + 1) < 0;
+  }
+
+  /**
+   * @return Returns 'true' if path equals base or is below it, everything is below "".
+   */
+  static boolean isBelow(String path, String base) {
+    return base.isEmpty() || path.equals(base) || path.startsWith(base + "/");
+  }
+
+  private static boolean isBelowAny(String path, List<String> bases) {
+    for (String base : bases) {
+      if (isBelow(path, base)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static List<String> paths(String value) {
+    List<String> result = new ArrayList<>();
+    if (value == null) {
+      return result;
+    }
+    for (String line : value.split("[\r\n]+")) {
+      String path = line.trim().replace('\\', '/');
+      while (path.startsWith("/")) {
+        path = path.substring(1);
+      }
+      while (path.endsWith("/")) {
+        path = path.substring(0, path.length() - 1);
+      }
+      if (!path.isEmpty() && !result.contains(path)) {
+        result.add(path);
+      }
+    }
+    return result;
+  }
+
+  private static List<String> roots(List<String> paths) {
+    List<String> result = new ArrayList<>();
+    for (String path : paths) {
+      boolean nested = false;
+      for (String other : paths) {
+        if (!other.equals(path) && isBelow(path, other)) {
+          nested = true;
+          break;
+        }
+      }
+      if (!nested) {
+        result.add(path);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * One 'sscm get' of the plan.
+   */
+  public static final class Get {
+    private final String path;
+    private final boolean recursive;
+    private final long weight;
+
+    Get(String path, boolean recursive, long weight) {
+      this.path = path;
+      this.recursive = recursive;
+      this.weight = weight;
+    }
+
+    /**
+     * @return Returns the repository path relative to the job's repository, "" for the repository itself.
+     */
+    public String getPath() {
+      return path;
+    }
+
+    public boolean isRecursive() {
+      return recursive;
+    }
+
+    public long getWeight() {
+      return weight;
+    }
+
+    @Override
+    public String toString() {
+      return (path.isEmpty() ? "/" : path) + (recursive ? " (recursive)" : "");
+    }
+  }
+}
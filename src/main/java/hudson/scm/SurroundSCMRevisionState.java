@@ -1,23 +1,76 @@
 package hudson.scm;
 
+import javax.annotation.CheckForNull;
 import java.util.Date;
 
 public final class SurroundSCMRevisionState extends SCMRevisionState {
 
   private final Date  buildDate;
   private final int   buildNumber;
-  
-	public SurroundSCMRevisionState(Date buildDate, int buildNumber) {
 
-		this.buildDate = new Date(buildDate.getTime());
+  /**
+   * Newest change timestamp the Surround SCM server reported for this build. Null for states written by older
+   * versions of the plugin, or when no change has been seen yet.
+   */
+  @CheckForNull
+  private final Date  lastChangeDate;
+
+  public SurroundSCMRevisionState(Date buildDate, int buildNumber) {
+    this(buildDate, buildNumber, null);
+  }
+
+  public SurroundSCMRevisionState(Date buildDate, int buildNumber, @CheckForNull Date lastChangeDate) {
+    this.buildDate = new Date(buildDate.getTime());
     this.buildNumber = buildNumber;
-	}
-	
-	public Date getDate() {
-		return new Date(buildDate.getTime());
-	}
-  
+    this.lastChangeDate = lastChangeDate != null ? new Date(lastChangeDate.getTime()) : null;
+  }
+
+  public Date getDate() {
+    return new Date(buildDate.getTime());
+  }
+
   public int getBuildNumber() {
     return buildNumber;
   }
+
+  /**
+   * @return Returns the newest change timestamp reported by the server, or null if unknown.
+   */
+  @CheckForNull
+  public Date getLastChangeDate() {
+    return lastChangeDate != null ? new Date(lastChangeDate.getTime()) : null;
+  }
+
+  /**
+   * Decides the newest change a new build records. The mark of the baseline build only carries over when a 'cc' over
+   * the whole window since it succeeded and found nothing newer; without such a query (ex. a checkout without
+   * changelog) it is dropped, so the new state starts its window at its own build date instead of asking again for
+   * changes the build already got.
+   *
+   * @param previous Newest change of the baseline build, or null
+   * @param reported Newest change the 'cc' of this build reported, or null
+   * @param queried  'true' if a 'cc' from the baseline's {@link #getChangesSince()} to this build's date succeeded
+   * @return Returns the newest change to record, or null to fall back to the build date.
+   */
+  @CheckForNull
+  static Date nextLastChangeDate(@CheckForNull Date previous, @CheckForNull Date reported, boolean queried) {
+    if (!queried) {
+      return null;
+    }
+    return reported != null ? reported : previous;
+  }
+
+  /**
+   * The start of the window polling and changelog queries should ask for. When the server reported a change for this
+   * build this is the second after that change, which is immune to clock skew between the controller and the server.
+   * Otherwise it falls back to the build date.
+   *
+   * @return Returns the first instant that is not covered by this build.
+   */
+  public Date getChangesSince() {
+    if (lastChangeDate != null) {
+      return new Date(lastChangeDate.getTime() + 1000L);
+    }
+    return getDate();
+  }
 }
@@ -0,0 +1,471 @@
+package hudson.scm;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import hudson.FilePath;
+import hudson.Util;
+import hudson.model.Node;
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+
+/**
+ * Node-local cache of checked out repositories, one directory per {@link SurroundSCM#getKey()} below
+ * '&lt;node root&gt;/sscm-cache'. A single 'sscm get' keeps the cache directory current and workspaces on the node are
+ * populated from it by local copy or hardlink, so the server is asked for each changed file once per node instead of
+ * once per workspace. Files that left the cache since the workspace was last populated are deleted from it.
+ * <p>
+ * The cache directory itself is never hardlinked, as 'sscm get' may rewrite its files in place. Hardlinked workspaces
+ * link to read-only copies in '&lt;key&gt;.snapshot' instead, which are replaced, never rewritten, when the cache file
+ * changes. With the node's content store enabled, they link to {@link SurroundSCMContentStore} objects.
+ * <p>
+ * Next to each cache directory a '&lt;key&gt;.used' marker records when it was last used (its modification time) and
+ * how many bytes it takes (its content), so the cache can be trimmed without walking it. When the node limits the
+ * cache size, the least recently used directories are deleted after each checkout until the cache fits again.
+ */
+public final class SurroundSCMSnapshotCache {
+  private static final String DIRECTORY_NAME = "sscm-cache";
+  private static final String USED_SUFFIX = ".used";
+  private static final String INDEX_SUFFIX = ".index.gz";
+  private static final String SNAPSHOT_SUFFIX = ".snapshot";
+  private static final String FILES_NAME = "cache-files.gz";
+
+  /**
+   * Serializes checkouts of the same cache directory on the same node, keyed by node name and cache key. Entries are
+   * removed once no checkout holds or waits for them.
+   */
+  private static final Map<String, KeyLock> LOCKS = new HashMap<>();
+
+  private final Node node;
+  private final FilePath root;
+  private final FilePath store;
+  private final SurroundSCMNodeProperty settings;
+
+  private SurroundSCMSnapshotCache(@Nonnull Node node, @Nonnull FilePath root, @CheckForNull FilePath store,
+                                   @Nonnull SurroundSCMNodeProperty settings) {
+    this.node = node;
+    this.root = root;
+    this.store = store;
+    this.settings = settings;
+  }
+
+  /**
+   * @param workspace Workspace of the build
+   * @return Returns the cache of the node the workspace lives on, or null if the node does not use one.
+   */
+  @CheckForNull
+  public static SurroundSCMSnapshotCache forWorkspace(@Nonnull FilePath workspace) {
+    Node node = SSCMUtils.workspaceToNode(workspace);
+    SurroundSCMNodeProperty settings = node.getNodeProperties().get(SurroundSCMNodeProperty.class);
+    FilePath rootPath = node.getRootPath();
+    if (settings == null || !settings.isSnapshotCache() || rootPath == null) {
+      return null;
+    }
+    FilePath store = settings.isContentStore() ? rootPath.child(SurroundSCMContentStore.DIRECTORY_NAME) : null;
+    return new SurroundSCMSnapshotCache(node, rootPath.child(DIRECTORY_NAME), store, settings);
+  }
+
+  /**
+   * @param key Cache key, see {@link SurroundSCM#getKey()}
+   * @return Returns the cache directory for that key.
+   */
+  @Nonnull
+  public FilePath getDirectory(@Nonnull String key) {
+    return root.child(key);
+  }
+
+  /**
+   * Locks the cache directory of the key against concurrent checkouts on this node. Callers must
+   * {@link KeyLock#unlock()} it when done.
+   */
+  @Nonnull
+  public KeyLock lock(@Nonnull String key) throws InterruptedException {
+    String name = node.getNodeName() + "/" + key;
+    KeyLock lock;
+    synchronized (LOCKS) {
+      lock = LOCKS.computeIfAbsent(name, k -> new KeyLock(k));
+      lock.users++;
+    }
+    try {
+      lock.lock.lockInterruptibly();
+    } catch (InterruptedException e) {
+      lock.release();
+      throw e;
+    }
+    return lock;
+  }
+
+  /**
+   * Mirrors the cache directory of the key into the workspace. Files that already match are left alone, files the
+   * workspace has on top of the cache are kept, files that left the cache since the last populate are deleted.
+   *
+   * @return Returns the number of files copied or linked
+   */
+  public long populate(@Nonnull String key, @Nonnull FilePath workspace) throws IOException, InterruptedException {
+    FilePath metadata = SurroundSCMWorkspaceState.getMetadataDirectory(workspace);
+    return getDirectory(key).act(new Populate(workspace.getRemote(), settings.isSnapshotCacheHardlinks(),
+            store != null ? store.getRemote() : null, root.child(key + INDEX_SUFFIX).getRemote(),
+            root.child(key + SNAPSHOT_SUFFIX).getRemote(), root.child(key + USED_SUFFIX).getRemote(),
+            metadata != null ? metadata.child(FILES_NAME).getRemote() : null));
+  }
+
+  /**
+   * Deletes the least recently used cache directories until the cache fits the node's size limit. Directories that
+   * are locked by a running checkout are never evicted. Then prunes the content store, with or without size limit.
+   *
+   * @param used   Key of the directory that was just used, it is never evicted
+   * @param logger Logger for the evicted directories
+   */
+  public void evict(@Nonnull String used, @Nonnull PrintStream logger) throws IOException, InterruptedException {
+    long maxBytes = settings.getSnapshotCacheMaxSizeMb() * 1024 * 1024;
+    if (maxBytes > 0) {
+      HashSet<String> keep = new HashSet<>();
+      keep.add(used);
+      String prefix = node.getNodeName() + "/";
+      synchronized (LOCKS) {
+        for (String name : LOCKS.keySet()) {
+          if (name.startsWith(prefix)) {
+            keep.add(name.substring(prefix.length()));
+          }
+        }
+      }
+      for (String evicted : root.act(new Evict(maxBytes, keep))) {
+        logger.println("Evicted Surround SCM cache " + evicted + " from " + root.getRemote());
+      }
+    }
+    if (store != null) {
+      long pruned = store.act(new SurroundSCMContentStore.Prune());
+      if (pruned > 0) {
+        logger.println("Pruned " + pruned + " unused files from " + store.getRemote());
+      }
+    }
+  }
+
+  /**
+   * Lock of one cache directory, see {@link #lock(String)}.
+   */
+  public static final class KeyLock {
+    private final String name;
+    private final ReentrantLock lock = new ReentrantLock();
+    private int users; // guarded by LOCKS
+
+    private KeyLock(String name) {
+      this.name = name;
+    }
+
+    public void unlock() {
+      lock.unlock();
+      release();
+    }
+
+    private void release() {
+      synchronized (LOCKS) {
+        if (--users == 0) {
+          LOCKS.remove(name);
+        }
+      }
+    }
+  }
+
+  static final class Populate extends MasterToSlaveFileCallable<Long> {
+    private static final long serialVersionUID = 1L;
+
+    private final String target;
+    private final boolean hardlinks;
+    private final String store;
+    private final String index;
+    private final String snapshot;
+    private final String marker;
+    private final String files;
+
+    /**
+     * @param target    Workspace to populate
+     * @param hardlinks Whether to link workspace files to read-only copies in 'snapshot' instead of copying them
+     * @param store     Root of the content store, or null if the node does not use one
+     * @param index     Content store index of the cache directory
+     * @param snapshot  Directory of the read-only copies hardlinked workspaces link to
+     * @param marker    The cache directory's '.used' marker
+     * @param files     List of the files populated into the workspace last time, or null if there is no place for it
+     */
+    Populate(String target, boolean hardlinks, @CheckForNull String store, String index, String snapshot,
+             String marker, @CheckForNull String files) {
+      this.target = target;
+      this.hardlinks = hardlinks;
+      this.store = store;
+      this.index = index;
+      this.snapshot = snapshot;
+      this.marker = marker;
+      this.files = files;
+    }
+
+    @Override
+    public Long invoke(File f, VirtualChannel channel) throws IOException {
+      final Path source = f.toPath();
+      final Path destination = new File(target).toPath();
+      final Path snapshotRoot = new File(snapshot).toPath();
+      final SurroundSCMContentStore contentStore = store != null
+              ? new SurroundSCMContentStore(new File(store).toPath(), new File(index).toPath()) : null;
+      final boolean publish = contentStore == null && hardlinks;
+      final Set<String> populated = new HashSet<>();
+      final long[] count = new long[1];
+      final long[] size = new long[1];
+      Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+        @Override
+        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+          Files.createDirectories(destination.resolve(source.relativize(dir).toString()));
+          return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+          String path = source.relativize(file).toString();
+          populated.add(path.replace(File.separatorChar, '/'));
+          size[0] += attrs.size();
+          Path shared = null;
+          if (contentStore != null) {
+            shared = contentStore.intern(path.replace(File.separatorChar, '/'), file, attrs);
+          } else if (publish) {
+            shared = publish(file, attrs, snapshotRoot.resolve(path));
+            size[0] += attrs.size();
+          }
+          Path copy = destination.resolve(path);
+          if (Files.exists(copy, LinkOption.NOFOLLOW_LINKS)) {
+            if (shared != null ? Files.isSameFile(shared, copy) : isSame(attrs, copy)) {
+              return FileVisitResult.CONTINUE;
+            }
+            delete(copy);
+          }
+          if (shared == null || !link(copy, shared)) {
+            Files.copy(file, copy, StandardCopyOption.COPY_ATTRIBUTES);
+          }
+          count[0]++;
+          return FileVisitResult.CONTINUE;
+        }
+      });
+      if (contentStore != null) {
+        contentStore.save();
+      }
+      if (publish) {
+        deleteOthers(snapshotRoot, populated);
+      } else if (Files.isDirectory(snapshotRoot)) {
+        Util.deleteRecursive(snapshotRoot.toFile()); // hardlinks were turned off
+      }
+      deleteRemoved(destination, populated);
+      Files.write(new File(marker).toPath(), Long.toString(size[0]).getBytes(StandardCharsets.UTF_8));
+      return count[0];
+    }
+
+    /**
+     * Makes sure 'published' is a read-only copy of the cache file. A changed file is replaced by a new copy, so
+     * workspaces linked to the old one keep their content.
+     */
+    private static Path publish(Path file, BasicFileAttributes attrs, Path published) throws IOException {
+      if (Files.exists(published, LinkOption.NOFOLLOW_LINKS) && isSame(attrs, published)) {
+        return published;
+      }
+      Files.createDirectories(published.getParent());
+      Path temp = published.resolveSibling(published.getFileName() + ".tmp");
+      Files.copy(file, temp, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+      temp.toFile().setReadOnly();
+      if (Files.exists(published, LinkOption.NOFOLLOW_LINKS)) {
+        delete(published);
+      }
+      Files.move(temp, published);
+      return published;
+    }
+
+    /**
+     * Deletes the files of the workspace that were populated last time but are no longer in the cache, then records
+     * what was populated this time.
+     */
+    private void deleteRemoved(Path destination, Set<String> populated) throws IOException {
+      if (files == null) {
+        return;
+      }
+      Path list = new File(files).toPath();
+      for (String path : readList(list)) {
+        if (!populated.contains(path)) {
+          Path removed = destination.resolve(path);
+          if (Files.isRegularFile(removed, LinkOption.NOFOLLOW_LINKS)) {
+            delete(removed);
+          }
+        }
+      }
+      Files.createDirectories(list.getParent());
+      try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+              new GZIPOutputStream(Files.newOutputStream(list)), StandardCharsets.UTF_8))) {
+        for (String path : populated) {
+          writer.write(path);
+          writer.write('\n');
+        }
+      }
+    }
+
+    private static List<String> readList(Path list) throws IOException {
+      List<String> paths = new ArrayList<>();
+      try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+              new GZIPInputStream(Files.newInputStream(list)), StandardCharsets.UTF_8))) {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          paths.add(line);
+        }
+      } catch (NoSuchFileException e) {
+        // first populate of the workspace
+      }
+      return paths;
+    }
+
+    /**
+     * Deletes the files below 'directory' that are not in 'keep'.
+     */
+    private static void deleteOthers(final Path directory, final Set<String> keep) throws IOException {
+      if (!Files.isDirectory(directory)) {
+        return;
+      }
+      Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+          if (!keep.contains(directory.relativize(file).toString().replace(File.separatorChar, '/'))) {
+            delete(file);
+          }
+          return FileVisitResult.CONTINUE;
+        }
+      });
+    }
+
+    private static boolean isSame(BasicFileAttributes attrs, Path copy) throws IOException {
+      BasicFileAttributes copyAttrs = Files.readAttributes(copy, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+      return copyAttrs.isRegularFile() && copyAttrs.size() == attrs.size()
+              && copyAttrs.lastModifiedTime().toMillis() == attrs.lastModifiedTime().toMillis(); // copies may lose the nanos
+    }
+
+    /**
+     * Deletes a file. Only makes it writable if it has to (Windows), as that would change every hardlink to it.
+     */
+    private static void delete(Path file) throws IOException {
+      try {
+        Files.delete(file);
+      } catch (AccessDeniedException e) {
+        file.toFile().setWritable(true); // sscm gets files read-only
+        Files.delete(file);
+      }
+    }
+
+    private static boolean link(Path link, Path existing) {
+      try {
+        Files.createLink(link, existing);
+        return true;
+      } catch (IOException | UnsupportedOperationException e) {
+        return false; // ex. workspace on another file system, fall back to a copy
+      }
+    }
+  }
+
+  static final class Evict extends MasterToSlaveFileCallable<List<String>> {
+    private static final long serialVersionUID = 1L;
+
+    private final long maxBytes;
+    private final HashSet<String> keep;
+
+    Evict(long maxBytes, HashSet<String> keep) {
+      this.maxBytes = maxBytes;
+      this.keep = keep;
+    }
+
+    @Override
+    public List<String> invoke(File f, VirtualChannel channel) throws IOException {
+      File[] directories = f.listFiles(file -> file.isDirectory() && !file.getName().endsWith(SNAPSHOT_SUFFIX));
+      List<String> evicted = new ArrayList<>();
+      if (directories == null) {
+        return evicted;
+      }
+
+      Map<File, Long> sizes = new HashMap<>();
+      long total = 0;
+      for (File directory : directories) {
+        long size = sizeOf(directory);
+        sizes.put(directory, size);
+        total += size;
+      }
+
+      List<File> candidates = new ArrayList<>(sizes.keySet());
+      candidates.sort((a, b) -> Long.compare(lastUsed(a), lastUsed(b)));
+      for (File directory : candidates) {
+        if (total <= maxBytes) {
+          break;
+        }
+        if (keep.contains(directory.getName())) {
+          continue;
+        }
+        Util.deleteRecursive(directory);
+        Util.deleteRecursive(new File(f, directory.getName() + SNAPSHOT_SUFFIX));
+        Files.deleteIfExists(new File(f, directory.getName() + USED_SUFFIX).toPath());
+        Files.deleteIfExists(new File(f, directory.getName() + INDEX_SUFFIX).toPath());
+        total -= sizes.get(directory);
+        evicted.add(directory.getName());
+      }
+      return evicted;
+    }
+
+    private static long lastUsed(File directory) {
+      File marker = new File(directory.getParentFile(), directory.getName() + USED_SUFFIX);
+      return marker.exists() ? marker.lastModified() : directory.lastModified();
+    }
+
+    /**
+     * @return Returns the size recorded in the directory's marker. Only directories without one, ex. left by an older
+     *         version of the plugin, are walked.
+     */
+    private static long sizeOf(File directory) throws IOException {
+      File marker = new File(directory.getParentFile(), directory.getName() + USED_SUFFIX);
+      try {
+        return Long.parseLong(new String(Files.readAllBytes(marker.toPath()), StandardCharsets.UTF_8).trim());
+      } catch (NoSuchFileException | NumberFormatException e) {
+        return walk(directory.toPath()) + walk(new File(directory.getParentFile(), directory.getName() + SNAPSHOT_SUFFIX).toPath());
+      }
+    }
+
+    private static long walk(Path directory) throws IOException {
+      final long[] size = new long[1];
+      if (!Files.isDirectory(directory)) {
+        return 0;
+      }
+      Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+          size[0] += attrs.size();
+          return FileVisitResult.CONTINUE;
+        }
+      });
+      return size[0];
+    }
+  }
+}
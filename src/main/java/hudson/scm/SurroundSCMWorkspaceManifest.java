@@ -0,0 +1,281 @@
+package hudson.scm;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Serializable;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import hudson.FilePath;
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+
+/**
+ * Record of the files checkout put into a workspace: path (relative to the workspace), Surround SCM version (empty if
+ * unknown), size and modification time, one tab separated line per file in a gzipped file next to the
+ * {@link SurroundSCMWorkspaceState}.
+ * <p>
+ * {@link #verify(FilePath)} compares it with the disk on all cores of the node, so checkout can tell in milliseconds
+ * whether the workspace still holds what the previous build checked out before skipping or narrowing the get.
+ */
+public final class SurroundSCMWorkspaceManifest {
+  private static final String FILE_NAME = "manifest.tsv.gz";
+
+  private SurroundSCMWorkspaceManifest() {
+  }
+
+  /**
+   * Writes a new manifest with the files currently on disk.
+   *
+   * @param workspace Workspace of the build
+   * @param files     Checked out files relative to the workspace, with their versions
+   */
+  public static void write(@Nonnull FilePath workspace, @Nonnull Map<String, String> files)
+          throws IOException, InterruptedException {
+    FilePath metadata = SurroundSCMWorkspaceState.getMetadataDirectory(workspace);
+    if (metadata != null) {
+      workspace.act(new Write(metadata.getRemote(), new TreeMap<>(files), null));
+    }
+  }
+
+  /**
+   * Updates the existing manifest after some files were fetched or deleted. Without an existing manifest nothing is
+   * written, since the result would not describe the whole workspace.
+   *
+   * @param workspace Workspace of the build
+   * @param updated   Fetched files relative to the workspace, with their versions
+   * @param deleted   Deleted files relative to the workspace
+   */
+  public static void update(@Nonnull FilePath workspace, @Nonnull Map<String, String> updated,
+                            @Nonnull Collection<String> deleted) throws IOException, InterruptedException {
+    FilePath metadata = SurroundSCMWorkspaceState.getMetadataDirectory(workspace);
+    if (metadata != null) {
+      workspace.act(new Write(metadata.getRemote(), new TreeMap<>(updated), new ArrayList<>(deleted)));
+    }
+  }
+
+  /**
+   * Deletes the manifest, ex. when the workspace content is unknown after a checkout that could not record it.
+   */
+  public static void delete(@Nonnull FilePath workspace) throws IOException, InterruptedException {
+    FilePath metadata = SurroundSCMWorkspaceState.getMetadataDirectory(workspace);
+    if (metadata != null) {
+      metadata.child(FILE_NAME).delete();
+    }
+  }
+
+  /**
+   * Checks every file of the manifest against the disk.
+   *
+   * @param workspace Workspace of the build
+   * @return Returns the result, {@link Verification#isFound()} is 'false' if there is no manifest
+   */
+  @Nonnull
+  public static Verification verify(@Nonnull FilePath workspace) throws IOException, InterruptedException {
+    FilePath metadata = SurroundSCMWorkspaceState.getMetadataDirectory(workspace);
+    if (metadata == null || !workspace.exists()) {
+      return new Verification(false, 0, Collections.emptyList());
+    }
+    return workspace.act(new Verify(metadata.getRemote()));
+  }
+
+  /**
+   * Outcome of {@link #verify(FilePath)}.
+   */
+  public static final class Verification implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final int SAMPLE_SIZE = 10;
+
+    private final boolean found;
+    private final int checked;
+    private final int mismatched;
+    private final ArrayList<String> sample;
+
+    Verification(boolean found, int checked, List<String> mismatches) {
+      this.found = found;
+      this.checked = checked;
+      this.mismatched = mismatches.size();
+      this.sample = new ArrayList<>(mismatches.subList(0, Math.min(SAMPLE_SIZE, mismatches.size())));
+    }
+
+    public boolean isFound() {
+      return found;
+    }
+
+    /**
+     * @return Returns 'true' if there is a manifest and every file in it is unchanged on disk.
+     */
+    public boolean isIntact() {
+      return found && mismatched == 0;
+    }
+
+    public int getChecked() {
+      return checked;
+    }
+
+    public int getMismatched() {
+      return mismatched;
+    }
+
+    /**
+     * @return Returns the first few files that are missing or changed.
+     */
+    public List<String> getSample() {
+      return Collections.unmodifiableList(sample);
+    }
+  }
+
+  private static final class Entry {
+    private final String path;
+    private final String version;
+    private final long size;
+    private final long lastModified;
+
+    Entry(String path, String version, long size, long lastModified) {
+      this.path = path;
+      this.version = version;
+      this.size = size;
+      this.lastModified = lastModified;
+    }
+
+    @CheckForNull
+    static Entry of(File root, String path, String version) {
+      File file = new File(root, path);
+      return file.isFile() ? new Entry(path, version, file.length(), file.lastModified()) : null;
+    }
+
+    boolean matches(File root) {
+      File file = new File(root, path);
+      return file.isFile() && file.length() == size && file.lastModified() == lastModified;
+    }
+  }
+
+  private static Map<String, Entry> load(File manifest) throws IOException {
+    Map<String, Entry> entries = new TreeMap<>();
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+            new GZIPInputStream(Files.newInputStream(manifest.toPath())), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        String[] fields = line.split("\t", 4);
+        if (fields.length == 4) {
+          entries.put(fields[0], new Entry(fields[0], fields[1], Long.parseLong(fields[2]), Long.parseLong(fields[3])));
+        }
+      }
+    } catch (NumberFormatException e) {
+      throw new IOException("Damaged manifest " + manifest, e);
+    }
+    return entries;
+  }
+
+  private static void save(File manifest, Collection<Entry> entries) throws IOException {
+    Files.createDirectories(manifest.getParentFile().toPath());
+    File temp = new File(manifest.getPath() + ".tmp");
+    try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+            new GZIPOutputStream(Files.newOutputStream(temp.toPath())), StandardCharsets.UTF_8))) {
+      for (Entry entry : entries) {
+        writer.write(entry.path + "\t" + entry.version + "\t" + entry.size + "\t" + entry.lastModified + "\n");
+      }
+    }
+    Files.move(temp.toPath(), manifest.toPath(), StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  private static final class Write extends MasterToSlaveFileCallable<Void> {
+    private static final long serialVersionUID = 1L;
+
+    private final String metadata;
+    private final TreeMap<String, String> files;
+    private final ArrayList<String> deleted;
+
+    /**
+     * @param deleted Null to write a new manifest, otherwise the existing one is updated
+     */
+    Write(String metadata, TreeMap<String, String> files, @CheckForNull ArrayList<String> deleted) {
+      this.metadata = metadata;
+      this.files = files;
+      this.deleted = deleted;
+    }
+
+    @Override
+    public Void invoke(File f, VirtualChannel channel) throws IOException {
+      File manifest = new File(metadata, FILE_NAME);
+      Map<String, Entry> entries;
+      if (deleted == null) {
+        entries = new TreeMap<>();
+      } else {
+        try {
+          entries = load(manifest);
+        } catch (NoSuchFileException e) {
+          return null;
+        }
+        for (String path : deleted) {
+          entries.remove(path);
+        }
+      }
+      for (Map.Entry<String, String> file : files.entrySet()) {
+        Entry entry = Entry.of(f, file.getKey(), file.getValue());
+        if (entry != null) {
+          entries.put(entry.path, entry);
+        } else {
+          entries.remove(file.getKey());
+        }
+      }
+      save(manifest, entries.values());
+      return null;
+    }
+  }
+
+  private static final class Verify extends MasterToSlaveFileCallable<Verification> {
+    private static final long serialVersionUID = 1L;
+
+    private final String metadata;
+
+    Verify(String metadata) {
+      this.metadata = metadata;
+    }
+
+    @Override
+    public Verification invoke(File f, VirtualChannel channel) throws IOException, InterruptedException {
+      Map<String, Entry> entries;
+      try {
+        entries = load(new File(metadata, FILE_NAME));
+      } catch (NoSuchFileException e) {
+        return new Verification(false, 0, Collections.emptyList());
+      }
+
+      ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+      try {
+        List<String> mismatches = pool.submit(() -> entries.values().parallelStream()
+                .filter(entry -> !entry.matches(f))
+                .map(entry -> entry.path)
+                .sorted()
+                .collect(Collectors.toList())).get();
+        return new Verification(true, entries.size(), mismatches);
+      } catch (ExecutionException e) {
+        throw new IOException("Verifying the workspace failed", e.getCause());
+      } finally {
+        pool.shutdown();
+      }
+    }
+  }
+}
@@ -0,0 +1,126 @@
+package hudson.scm;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.util.Properties;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import hudson.FilePath;
+import hudson.slaves.WorkspaceList;
+
+/**
+ * Small record of what the last successful checkout put into a workspace: which repository (see
+ * {@link SurroundSCM#getKey()}) and which revision state. It lives in the workspace's '@tmp' sibling so it never
+ * shows up in the workspace itself.
+ * <p>
+ * Checkout only trusts a workspace for incremental updates when this record matches the baseline it is given.
+ */
+public final class SurroundSCMWorkspaceState {
+  private static final String FILE_NAME = "workspace.properties";
+
+  private final String key;
+  private final long snapshot;
+  private final int buildNumber;
+
+  public SurroundSCMWorkspaceState(@Nonnull String key, long snapshot, int buildNumber) {
+    this.key = key;
+    this.snapshot = snapshot;
+    this.buildNumber = buildNumber;
+  }
+
+  public String getKey() {
+    return key;
+  }
+
+  /**
+   * @return Returns the revision state date (in milliseconds) the workspace was checked out for.
+   */
+  public long getSnapshot() {
+    return snapshot;
+  }
+
+  public int getBuildNumber() {
+    return buildNumber;
+  }
+
+  /**
+   * @param key      Key of the SCM about to update the workspace
+   * @param baseline Revision state of the previous build
+   * @return Returns 'true' if the workspace was last checked out by the same SCM for that revision state.
+   */
+  public boolean matches(@Nonnull String key, @Nonnull SurroundSCMRevisionState baseline) {
+    return this.key.equals(key) && snapshot == baseline.getDate().getTime()
+            && buildNumber == baseline.getBuildNumber();
+  }
+
+  /**
+   * @param workspace Workspace of the build
+   * @return Returns the directory the plugin keeps its workspace metadata in, or null if the workspace has none.
+   */
+  @CheckForNull
+  public static FilePath getMetadataDirectory(@Nonnull FilePath workspace) {
+    FilePath tempDir = WorkspaceList.tempDir(workspace);
+    return tempDir != null ? tempDir.child("sscm") : null;
+  }
+
+  /**
+   * @param workspace Workspace of the build
+   * @return Returns the recorded state, or null if there is none or it can not be read.
+   */
+  @CheckForNull
+  public static SurroundSCMWorkspaceState load(@Nonnull FilePath workspace) throws InterruptedException {
+    FilePath metadata = getMetadataDirectory(workspace);
+    try {
+      if (metadata == null || !workspace.exists()) {
+        return null;
+      }
+      FilePath file = metadata.child(FILE_NAME);
+      if (!file.exists()) {
+        return null;
+      }
+      Properties properties = new Properties();
+      try (InputStream is = file.read()) {
+        properties.load(is);
+      }
+      String key = properties.getProperty("key");
+      if (key == null) {
+        return null;
+      }
+      return new SurroundSCMWorkspaceState(key, Long.parseLong(properties.getProperty("snapshot", "0")),
+              Integer.parseInt(properties.getProperty("buildNumber", "0")));
+    } catch (IOException | NumberFormatException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Records this state for the workspace.
+   */
+  public void save(@Nonnull FilePath workspace) throws IOException, InterruptedException {
+    FilePath metadata = getMetadataDirectory(workspace);
+    if (metadata == null) {
+      return;
+    }
+    Properties properties = new Properties();
+    properties.setProperty("key", key);
+    properties.setProperty("snapshot", Long.toString(snapshot));
+    properties.setProperty("buildNumber", Integer.toString(buildNumber));
+    StringWriter writer = new StringWriter();
+    properties.store(writer, "Surround SCM workspace state");
+    metadata.mkdirs();
+    metadata.child(FILE_NAME).write(writer.toString(), "UTF-8");
+  }
+
+  /**
+   * Forgets the recorded state, so the next checkout does a full get.
+   */
+  public static void clear(@Nonnull FilePath workspace) throws IOException, InterruptedException {
+    FilePath metadata = getMetadataDirectory(workspace);
+    if (metadata != null) {
+      metadata.child(FILE_NAME).delete();
+    }
+  }
+}
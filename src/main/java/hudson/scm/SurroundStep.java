@@ -28,6 +28,9 @@ public class SurroundStep extends SCMStep {
   private final String url;
   private final String credentialsId;
   private RSAKey rsaKey;
+  private int parallelCheckout;
+  private String includedRepositories;
+  private String excludedRepositories;
 
   @DataBoundConstructor
   public SurroundStep(String url, String credentialsId)
@@ -57,6 +60,36 @@ public class SurroundStep extends SCMStep {
   @DataBoundSetter
   public void setRsaKey(RSAKey rsaKey) { this.rsaKey = rsaKey; }
 
+  @DataBoundSetter
+  public void setParallelCheckout(int parallelCheckout) {
+    this.parallelCheckout = Math.max(0, parallelCheckout);
+  }
+
+  @Exported
+  public int getParallelCheckout() {
+    return parallelCheckout;
+  }
+
+  @DataBoundSetter
+  public void setIncludedRepositories(String includedRepositories) {
+    this.includedRepositories = Util.fixEmptyAndTrim(includedRepositories);
+  }
+
+  @Exported
+  public String getIncludedRepositories() {
+    return includedRepositories;
+  }
+
+  @DataBoundSetter
+  public void setExcludedRepositories(String excludedRepositories) {
+    this.excludedRepositories = Util.fixEmptyAndTrim(excludedRepositories);
+  }
+
+  @Exported
+  public String getExcludedRepositories() {
+    return excludedRepositories;
+  }
+
   @Nonnull
   @Override
   protected SCM createSCM() {
@@ -67,6 +100,9 @@ public class SurroundStep extends SCMStep {
 
     SurroundSCM sscm = new SurroundSCM(server, port, branch, repository, credentialsId);
     sscm.setRsaKey(rsaKey);
+    sscm.setParallelCheckout(parallelCheckout);
+    sscm.setIncludedRepositories(includedRepositories);
+    sscm.setExcludedRepositories(excludedRepositories);
     return sscm;
   }
 
@@ -0,0 +1,156 @@
+package andritz.sscm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+
+import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import hudson.model.FreeStyleProject;
+import hudson.model.TaskListener;
+import hudson.model.listeners.SCMListener;
+import hudson.scm.SurroundSCM;
+import hudson.scm.SurroundSCMPollScheduler;
+import hudson.triggers.SCMTrigger;
+import hudson.util.Secret;
+
+/**
+ * SurroundSCMNotifyCommitAction Tester, calls the endpoint over HTTP like a Surround SCM trigger would.
+ */
+public class SurroundSCMNotifyCommitActionTest {
+   private static final String TOKEN = "s3cr3t";
+
+   @Rule
+   public JenkinsRule j = new JenkinsRule();
+
+   private FreeStyleProject project;
+
+   @Before
+   public void setUp() throws Exception {
+      project = j.createFreeStyleProject("polled");
+      project.setScm(new SurroundSCM("sscm", "4900", "Main", "Main/Repo", null));
+      SCMTrigger trigger = new SCMTrigger("");
+      project.addTrigger(trigger);
+      trigger.start(project, true);
+   }
+
+   private void configureToken(String token) {
+      SurroundSCM.SurroundSCMDescriptor descriptor = j.jenkins.getDescriptorByType(SurroundSCM.SurroundSCMDescriptor.class);
+      descriptor.setNotifyCommitToken(token != null ? Secret.fromString(token) : null);
+   }
+
+   /**
+    * @return Returns the status code and the body of the response, separated by a new line.
+    */
+   private String notifyCommit(String repository, String token) throws IOException {
+      StringBuilder query = new StringBuilder("server=sscm&port=4900&branch=Main&repository=")
+            .append(URLEncoder.encode(repository, "UTF-8"));
+      if (token != null) {
+         query.append("&token=").append(URLEncoder.encode(token, "UTF-8"));
+      }
+      URL url = new URL(j.getURL(), SurroundSCMNotifyCommitAction.URL_NAME + "/notifyCommit?" + query);
+      HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+      try {
+         int status = connection.getResponseCode();
+         InputStream body = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+         ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+         if (body != null) {
+            try (InputStream in = body) {
+               byte[] buffer = new byte[4096];
+               for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+                  bytes.write(buffer, 0, read);
+               }
+            }
+         }
+         return status + "\n" + new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+      } finally {
+         connection.disconnect();
+      }
+   }
+
+   @Test
+   public void tokenNotConfigured() throws Exception {
+      configureToken(null);
+      assertTrue(notifyCommit("Main/Repo", TOKEN).startsWith("403\n"));
+   }
+
+   @Test
+   public void missingToken() throws Exception {
+      configureToken(TOKEN);
+      assertTrue(notifyCommit("Main/Repo", null).startsWith("403\n"));
+   }
+
+   @Test
+   public void badToken() throws Exception {
+      configureToken(TOKEN);
+      assertTrue(notifyCommit("Main/Repo", "wrong").startsWith("403\n"));
+   }
+
+   @Test
+   public void matchingJobIsScheduled() throws Exception {
+      configureToken(TOKEN);
+      String response = notifyCommit("Main/Repo/Sub", TOKEN);
+      assertTrue(response, response.startsWith("200\n"));
+      assertTrue(response, response.contains("Scheduled polling of polled"));
+   }
+
+   @Test
+   public void otherRepositoryIsNotScheduled() throws Exception {
+      configureToken(TOKEN);
+      String response = notifyCommit("Main/Other", TOKEN);
+      assertEquals("200\nNo jobs found for sscm://sscm:4900//Main//Main/Other" + System.lineSeparator(), response);
+   }
+
+   @Test
+   public void backedOffAdaptivePollIsReset() throws Exception {
+      configureToken(TOKEN);
+      ((SurroundSCM) project.getScm()).setAdaptivePolling(true);
+      SurroundSCMPollScheduler scheduler = SurroundSCMPollScheduler.get();
+      long now = System.currentTimeMillis();
+      for (int i = 0; i < 5; i++) {
+         scheduler.record("polled", now, 0, false);
+      }
+      assertFalse(scheduler.isDue("polled", now));
+
+      String response = notifyCommit("Main/Repo", TOKEN);
+      assertTrue(response, response.contains("Scheduled polling of polled"));
+      assertTrue(scheduler.isDue("polled", now));
+   }
+
+   @Test
+   public void pipelineIsFoundAfterCheckout() throws Exception {
+      configureToken(TOKEN);
+      WorkflowJob pipeline = j.createProject(WorkflowJob.class, "pipeline");
+      pipeline.setDefinition(new CpsFlowDefinition("def built = true", true));
+      SCMTrigger trigger = new SCMTrigger("");
+      pipeline.addTrigger(trigger);
+      trigger.start(pipeline, true);
+      WorkflowRun run = j.buildAndAssertSuccess(pipeline);
+
+      // A pipeline only reports the SCMs its builds checked out.
+      String response = notifyCommit("Main/Pipeline", TOKEN);
+      assertTrue(response, response.contains("No jobs found"));
+
+      // Stands in for a 'checkout' step, which needs a Surround SCM server.
+      SurroundSCM scm = new SurroundSCM("sscm", "4900", "Main", "Main/Pipeline", null);
+      for (SCMListener listener : SCMListener.all()) {
+         listener.onCheckout(run, scm, j.jenkins.getWorkspaceFor(pipeline), TaskListener.NULL, null, null);
+      }
+      response = notifyCommit("Main/Pipeline", TOKEN);
+      assertTrue(response, response.contains("Scheduled polling of pipeline"));
+   }
+}
@@ -0,0 +1,90 @@
+package hudson.scm;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * SurroundSCMBackgroundTask Tester.
+ */
+public class SurroundSCMBackgroundTaskTest extends TestCase {
+  private ExecutorService executor;
+
+  public SurroundSCMBackgroundTaskTest(String name) {
+    super(name);
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    executor = Executors.newSingleThreadExecutor();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    executor.shutdownNow();
+  }
+
+  public void testJoin() throws Exception {
+    assertEquals("done", SurroundSCMBackgroundTask.submit(executor, "Work", () -> "done").join());
+  }
+
+  public void testJoinRethrowsIOException() throws Exception {
+    SurroundSCMBackgroundTask<String> task = SurroundSCMBackgroundTask.submit(executor, "Work", () -> {
+      throw new IOException("broken");
+    });
+    try {
+      task.join();
+      fail();
+    } catch (IOException e) {
+      assertEquals("broken", e.getMessage());
+    }
+  }
+
+  public void testAbandonWaitsForRunningWork() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+    AtomicBoolean ended = new AtomicBoolean();
+    SurroundSCMBackgroundTask<String> task = SurroundSCMBackgroundTask.submit(executor, "Work", () -> {
+      started.countDown();
+      try {
+        Thread.sleep(60000);
+      } catch (InterruptedException e) {
+        Thread.sleep(200); // still cleaning up after the interrupt
+        ended.set(true);
+        throw e;
+      }
+      return "done";
+    });
+    assertTrue(started.await(10, TimeUnit.SECONDS));
+    task.abandon();
+    assertTrue("abandon() returned before the work ended", ended.get());
+  }
+
+  public void testAbandonedWorkNeverStarts() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    executor.submit(() -> {
+      release.await();
+      return null;
+    });
+    AtomicBoolean ran = new AtomicBoolean();
+    SurroundSCMBackgroundTask<String> task = SurroundSCMBackgroundTask.submit(executor, "Work", () -> {
+      ran.set(true);
+      return "done";
+    });
+    task.abandon();
+    release.countDown();
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    assertFalse(ran.get());
+  }
+
+  public static Test suite() {
+    return new TestSuite(SurroundSCMBackgroundTaskTest.class);
+  }
+}
@@ -0,0 +1,56 @@
+package hudson.scm;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * SurroundSCMChangeCounter Tester.
+ */
+public class SurroundSCMChangeCounterTest extends TestCase {
+
+  public SurroundSCMChangeCounterTest(String name) {
+    super(name);
+  }
+
+  public void testCountFromFirstLine() throws Exception {
+    SurroundSCMChangeCounter counter = new SurroundSCMChangeCounter(null);
+    counter.write("total:3\r\n<Mainline/Repo><a.txt><2><Check in><20161103144114><><user><>\n".getBytes(StandardCharsets.UTF_8));
+    counter.close();
+    assertTrue(counter.isCountFound());
+    assertEquals(3.0, counter.getCount());
+    assertTrue(counter.isDone());
+  }
+
+  public void testCountSplitAcrossWrites() throws Exception {
+    SurroundSCMChangeCounter counter = new SurroundSCMChangeCounter(null);
+    byte[] bytes = "total:12\n".getBytes(StandardCharsets.UTF_8);
+    for (byte b : bytes) {
+      counter.write(b);
+    }
+    counter.close();
+    assertEquals(12.0, counter.getCount());
+  }
+
+  public void testCountWithoutTrailingNewline() throws Exception {
+    SurroundSCMChangeCounter counter = new SurroundSCMChangeCounter(null);
+    counter.write("total:0".getBytes(StandardCharsets.UTF_8));
+    counter.close();
+    assertTrue(counter.isCountFound());
+    assertEquals(0.0, counter.getCount());
+  }
+
+  public void testMalformedCountLine() throws Exception {
+    SurroundSCMChangeCounter counter = new SurroundSCMChangeCounter(null);
+    counter.write("Error: could not connect\n".getBytes(StandardCharsets.UTF_8));
+    counter.close();
+    assertFalse(counter.isCountFound());
+    assertEquals(0.0, counter.getCount());
+  }
+
+  public static Test suite() {
+    return new TestSuite(SurroundSCMChangeCounterTest.class);
+  }
+}
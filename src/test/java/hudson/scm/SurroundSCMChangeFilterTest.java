@@ -0,0 +1,61 @@
+package hudson.scm;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * SurroundSCMChangeFilter Tester.
+ */
+public class SurroundSCMChangeFilterTest extends TestCase {
+  private final static String REPOSITORY = "Mainline/Project";
+
+  public SurroundSCMChangeFilterTest(String name) {
+    super(name);
+  }
+
+  private static SurroundSCMChangeRecord record(String repository, String file, String user, String comment) {
+    return new SurroundSCMChangeRecord(repository, file, "2", "Check in", "20200101120000", comment, user,
+            "user@example.com");
+  }
+
+  public void testEmptyFilterKeepsEverything() throws Exception {
+    SurroundSCMChangeFilter filter = new SurroundSCMChangeFilter(null, "", " \n", null);
+    assertTrue(filter.isEmpty());
+    assertTrue(filter.isRelevant(record(REPOSITORY, "a.txt", "user", ""), REPOSITORY));
+  }
+
+  public void testGlobs() throws Exception {
+    assertTrue(SurroundSCMChangeFilter.globToPattern("docs/**").matcher("docs/a/b.md").matches());
+    assertTrue(SurroundSCMChangeFilter.globToPattern("**/*.md").matcher("README.md").matches());
+    assertTrue(SurroundSCMChangeFilter.globToPattern("**/*.md").matcher("a/b/README.md").matches());
+    assertFalse(SurroundSCMChangeFilter.globToPattern("*.md").matcher("a/README.md").matches());
+    assertTrue(SurroundSCMChangeFilter.globToPattern("src/?.c").matcher("src/a.c").matches());
+    assertFalse(SurroundSCMChangeFilter.globToPattern("src/?.c").matcher("src/ab.c").matches());
+  }
+
+  public void testExcludedPaths() throws Exception {
+    SurroundSCMChangeFilter filter = new SurroundSCMChangeFilter(null, "docs/**\n**/*.md", null, null);
+    assertFalse(filter.isRelevant(record(REPOSITORY + "/docs/guide", "index.html", "user", ""), REPOSITORY));
+    assertFalse(filter.isRelevant(record(REPOSITORY + "/src", "README.md", "user", ""), REPOSITORY));
+    assertTrue(filter.isRelevant(record(REPOSITORY + "/src", "main.c", "user", ""), REPOSITORY));
+  }
+
+  public void testIncludedPaths() throws Exception {
+    SurroundSCMChangeFilter filter = new SurroundSCMChangeFilter("src/**", null, null, null);
+    assertTrue(filter.isRelevant(record(REPOSITORY + "/src/lib", "main.c", "user", ""), REPOSITORY));
+    assertFalse(filter.isRelevant(record(REPOSITORY, "build.xml", "user", ""), REPOSITORY));
+  }
+
+  public void testExcludedUsersAndMessages() throws Exception {
+    SurroundSCMChangeFilter filter = new SurroundSCMChangeFilter(null, null, "CI-Bot", "\\[ci skip\\]\n[unbalanced");
+    assertFalse(filter.isRelevant(record(REPOSITORY, "a.txt", "ci-bot", ""), REPOSITORY));
+    assertFalse(filter.isRelevant(record(REPOSITORY, "a.txt", "user", "Fix typo [ci skip]"), REPOSITORY));
+    assertFalse(filter.isRelevant(record(REPOSITORY, "a.txt", "user", "see [unbalanced"), REPOSITORY));
+    assertTrue(filter.isRelevant(record(REPOSITORY, "a.txt", "user", "Real change"), REPOSITORY));
+  }
+
+  public static Test suite() {
+    return new TestSuite(SurroundSCMChangeFilterTest.class);
+  }
+}
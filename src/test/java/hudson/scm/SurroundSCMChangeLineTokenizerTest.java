@@ -0,0 +1,98 @@
+package hudson.scm;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * SurroundSCMChangeLineTokenizer Tester.
+ */
+public class SurroundSCMChangeLineTokenizerTest extends TestCase {
+
+  public SurroundSCMChangeLineTokenizerTest(String name) {
+    super(name);
+  }
+
+  public void testRecord() throws Exception {
+    SurroundSCMChangeRecord record = SurroundSCMChangeRecord.parse(
+            "<Mainline/Repository/Path/To/File><Filename.txt><21><Check in><20161103144114><Comment for the action><LastName, FirstName><email@address.com>");
+    assertNotNull(record);
+    assertEquals("Mainline/Repository/Path/To/File", record.getRepository());
+    assertEquals("Filename.txt", record.getFilename());
+    assertEquals("21", record.getVersion());
+    assertEquals("Check in", record.getAction());
+    assertEquals("20161103144114", record.getDate());
+    assertEquals("Comment for the action", record.getComment());
+    assertEquals("LastName, FirstName", record.getUserName());
+    assertEquals("email@address.com", record.getEmail());
+  }
+
+  public void testEmptyFields() throws Exception {
+    SurroundSCMChangeRecord record = SurroundSCMChangeRecord.parse("<Mainline/Repo><a.txt><2><Check in><20161103144114><><><>");
+    assertNotNull(record);
+    assertEquals("20161103144114", record.getDate());
+    assertEquals("", record.getComment());
+    assertEquals("", record.getUserName());
+    assertEquals("", record.getEmail());
+  }
+
+  public void testCommentWithAngleBrackets() throws Exception {
+    SurroundSCMChangeRecord record = SurroundSCMChangeRecord.parse(
+            "<Mainline/Repo><a.txt><2><Check in><20161103144114><Fix <> and <b><c> in List<String>><user><user@example.com>");
+    assertNotNull(record);
+    assertEquals("Check in", record.getAction());
+    assertEquals("Fix <> and <b><c> in List<String>", record.getComment());
+    assertEquals("user", record.getUserName());
+    assertEquals("user@example.com", record.getEmail());
+  }
+
+  public void testSurroundingText() throws Exception {
+    SurroundSCMChangeRecord record = SurroundSCMChangeRecord.parse("  <Mainline/Repo><a.txt><2><Add><20161103144114><c><u><e> ");
+    assertNotNull(record);
+    assertEquals("Mainline/Repo", record.getRepository());
+    assertEquals("e", record.getEmail());
+  }
+
+  public void testNotARecord() throws Exception {
+    assertNull(SurroundSCMChangeRecord.parse("total:3"));
+    assertNull(SurroundSCMChangeRecord.parse(""));
+    assertNull(SurroundSCMChangeRecord.parse("<"));
+    assertNull(SurroundSCMChangeRecord.parse("<>"));
+    assertNull(SurroundSCMChangeRecord.parse("<Mainline/Repo><a.txt><2><Check in>"));
+    assertNull(SurroundSCMChangeRecord.parse("<Mainline/Repo><a.txt><2><Check in><20161103144114><c><u>"));
+  }
+
+  public void testReuse() throws Exception {
+    SurroundSCMChangeLineTokenizer tokenizer = new SurroundSCMChangeLineTokenizer();
+    assertTrue(tokenizer.tokenize("<Mainline/Long/Repository><long-file-name.txt><123><Check in><20161103144114><A long comment><user><e>"));
+    assertFalse(tokenizer.tokenize("total:1"));
+    assertTrue(tokenizer.tokenize("<R><f><1><Add><20170101000000><><v><>"));
+    assertEquals("R", tokenizer.field(SurroundSCMChangeLineTokenizer.REPOSITORY));
+    assertEquals("f", tokenizer.field(SurroundSCMChangeLineTokenizer.FILENAME));
+    assertEquals("", tokenizer.field(SurroundSCMChangeLineTokenizer.COMMENT));
+    assertEquals("v", tokenizer.field(SurroundSCMChangeLineTokenizer.USER_NAME));
+  }
+
+  public void testCompareField() throws Exception {
+    SurroundSCMChangeLineTokenizer tokenizer = new SurroundSCMChangeLineTokenizer();
+    assertTrue(tokenizer.tokenize("<R><f><1><Add><20170101000000><><v><>"));
+    assertEquals(0, tokenizer.compareField(SurroundSCMChangeLineTokenizer.DATE, "20170101000000"));
+    assertTrue(tokenizer.compareField(SurroundSCMChangeLineTokenizer.DATE, "20161231235959") > 0);
+    assertTrue(tokenizer.compareField(SurroundSCMChangeLineTokenizer.DATE, "20170101000001") < 0);
+    assertTrue(tokenizer.compareField(SurroundSCMChangeLineTokenizer.VERSION, "12") < 0);
+  }
+
+  public void testNewestDate() throws Exception {
+    SurroundSCMChangeRecord.NewestDateTracker tracker = new SurroundSCMChangeRecord.NewestDateTracker();
+    tracker.write(("total:3\r\n"
+            + "<R><a><1><Add><20170101000000><><u><>\r\n"
+            + "<R><b><1><Add><20170301000000><<>><u><>\r\n"
+            + "<R><c><1><Add><20170201000000><><u><>\r\n").getBytes("UTF-8"));
+    tracker.close();
+    assertEquals(SurroundSCMChangeRecord.parseDate("20170301000000"), tracker.getNewestDate());
+  }
+
+  public static Test suite() {
+    return new TestSuite(SurroundSCMChangeLineTokenizerTest.class);
+  }
+}
@@ -0,0 +1,84 @@
+package hudson.scm;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * SurroundSCMChangeLogIndex Tester.
+ */
+public class SurroundSCMChangeLogIndexTest extends TestCase {
+  private File changelog;
+
+  public SurroundSCMChangeLogIndexTest(String name) {
+    super(name);
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    changelog = File.createTempFile("changelog", ".xml");
+    StringBuilder lines = new StringBuilder("total:7\n");
+    for (int transaction = 0; transaction < SurroundSCMChangeLogIndex.PAGE_SIZE + 2; transaction++) {
+      for (int file = 0; file <= transaction % 3; file++) {
+        lines.append("<Mainline/Repo/dir").append(transaction).append("><file").append(file).append(".txt><")
+                .append(file + 1).append("><Check in><201701010000").append(transaction % 10).append(transaction % 6)
+                .append("><Change ").append(transaction).append("><user").append(transaction % 2).append("><user")
+                .append(transaction % 2).append("@example.com>\n");
+      }
+    }
+    Files.write(changelog.toPath(), lines.toString().getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    Files.deleteIfExists(SurroundSCMChangeLogIndex.getIndexFile(changelog).toPath());
+    Files.deleteIfExists(changelog.toPath());
+  }
+
+  public void testMissingIndex() throws Exception {
+    assertNull(SurroundSCMChangeLogIndex.open(changelog));
+  }
+
+  public void testWriteAndRead() throws Exception {
+    SurroundSCMChangeLogParser.writeIndex(changelog);
+    SurroundSCMChangeLogIndex index = SurroundSCMChangeLogIndex.open(changelog);
+    assertNotNull(index);
+    assertEquals(SurroundSCMChangeLogIndex.PAGE_SIZE + 2, index.getCount());
+    assertEquals(2, index.getPageCount());
+    assertEquals("user0@example.com", index.getEmails().get("user0"));
+    assertEquals("user1@example.com", index.getEmails().get("user1"));
+
+    SurroundSCMChangeLogSet set = new SurroundSCMChangeLogSet(null, null);
+    List<SurroundSCMChangeLogSet.SurroundSCMChangeLogSetEntry> page = index.readPage(1, set);
+    assertEquals(2, page.size());
+    SurroundSCMChangeLogSet.SurroundSCMChangeLogSetEntry entry = page.get(1);
+    int transaction = SurroundSCMChangeLogIndex.PAGE_SIZE + 1;
+    assertEquals("Change " + transaction, entry.getComment());
+    assertEquals(transaction % 3 + 1, entry.getAffectedFiles().size());
+    assertEquals("Mainline/Repo/dir" + transaction + "/file0.txt", entry.getPath());
+    assertEquals("1", entry.getVersion());
+    assertEquals("Check in", entry.getAction());
+    assertSame(set, entry.getParent());
+  }
+
+  public void testStaleIndex() throws Exception {
+    SurroundSCMChangeLogParser.writeIndex(changelog);
+    File index = SurroundSCMChangeLogIndex.getIndexFile(changelog);
+    assertTrue(index.setLastModified(changelog.lastModified() - 60000));
+    assertNull(SurroundSCMChangeLogIndex.open(changelog));
+  }
+
+  public void testDamagedIndex() throws Exception {
+    Files.write(SurroundSCMChangeLogIndex.getIndexFile(changelog).toPath(), "not an index".getBytes(StandardCharsets.UTF_8));
+    assertNull(SurroundSCMChangeLogIndex.open(changelog));
+  }
+
+  public static Test suite() {
+    return new TestSuite(SurroundSCMChangeLogIndexTest.class);
+  }
+}
@@ -0,0 +1,101 @@
+package hudson.scm;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * SurroundSCMChangeLogParser Tester.
+ */
+public class SurroundSCMChangeLogParserTest extends TestCase {
+  private final List<File> changelogs = new ArrayList<>();
+
+  public SurroundSCMChangeLogParserTest(String name) {
+    super(name);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    for (File changelog : changelogs) {
+      Files.deleteIfExists(SurroundSCMChangeLogIndex.getIndexFile(changelog).toPath());
+      Files.deleteIfExists(changelog.toPath());
+    }
+  }
+
+  private File changelog(String comment) throws Exception {
+    File changelog = File.createTempFile("changelog", ".xml");
+    changelogs.add(changelog);
+    Files.write(changelog.toPath(), ("total:2\n"
+            + "<Mainline/Repo><a.txt><2><Check in><20170101000000><" + comment + "><user><user@example.com>\n"
+            + "<Mainline/Repo><b.txt><5><Check in><20170101000000><" + comment + "><user><user@example.com>\n")
+            .getBytes(StandardCharsets.UTF_8));
+    return changelog;
+  }
+
+  private static SurroundSCMChangeLogSet parse(File changelog) {
+    return (SurroundSCMChangeLogSet) new SurroundSCMChangeLogParser().parse(null, null, changelog);
+  }
+
+  public void testCacheHit() throws Exception {
+    File changelog = changelog("first");
+    SurroundSCMChangeLogSet first = parse(changelog);
+    SurroundSCMChangeLogSet parsed = SurroundSCMChangeLogParser.getCached(changelog);
+    assertNotNull(parsed);
+
+    SurroundSCMChangeLogSet second = parse(changelog);
+    assertSame(parsed, SurroundSCMChangeLogParser.getCached(changelog));
+    assertNotSame("Every build object gets its own change set", first, second);
+    SurroundSCMChangeLogSet.SurroundSCMChangeLogSetEntry entry = second.iterator().next();
+    assertSame(second, entry.getParent());
+    assertEquals("first", entry.getComment());
+    assertEquals(2, entry.getAffectedFiles().size());
+    assertEquals("user@example.com", second.getEmails().get("user"));
+  }
+
+  public void testCacheMissOnModifiedChangelog() throws Exception {
+    File changelog = changelog("first");
+    parse(changelog);
+    SurroundSCMChangeLogSet parsed = SurroundSCMChangeLogParser.getCached(changelog);
+
+    Files.write(changelog.toPath(), Files.readAllLines(changelog.toPath()).get(0).getBytes(StandardCharsets.UTF_8));
+    assertTrue(changelog.setLastModified(changelog.lastModified() + 60000));
+    assertNull(SurroundSCMChangeLogParser.getCached(changelog));
+    assertTrue(parse(changelog).isEmptySet());
+    assertNotSame(parsed, SurroundSCMChangeLogParser.getCached(changelog));
+  }
+
+  public void testCacheSize() throws Exception {
+    File oldest = changelog("oldest");
+    parse(oldest);
+    for (int i = 0; i < SurroundSCMChangeLogParser.CACHE_SIZE; i++) {
+      parse(changelog("newer " + i));
+    }
+    assertNull(SurroundSCMChangeLogParser.getCached(oldest));
+    assertNotNull(SurroundSCMChangeLogParser.getCached(changelogs.get(changelogs.size() - 1)));
+  }
+
+  public void testParsedEntriesAreCopied() throws Exception {
+    SurroundSCMChangeLogSet parsed = new SurroundSCMChangeLogSet(null, null);
+    parsed.addEntry(new SurroundSCMChangeLogSet.SurroundSCMChangeLogSetEntry("Mainline/Repo/a.txt", "comment", "1",
+            "Check in", "20170101000000", parsed, "user", "user@example.com"));
+
+    SurroundSCMChangeLogSet copy = new SurroundSCMChangeLogSet(null, null);
+    copy.copyFrom(parsed);
+    SurroundSCMChangeLogSet.SurroundSCMChangeLogSetEntry original = parsed.iterator().next();
+    SurroundSCMChangeLogSet.SurroundSCMChangeLogSetEntry copied = copy.iterator().next();
+    assertNotSame(original, copied);
+    assertSame(copy, copied.getParent());
+    assertSame(original.getAffectedFiles().iterator().next(), copied.getAffectedFiles().iterator().next());
+    assertEquals("user@example.com", copy.getEmails().get("user"));
+  }
+
+  public static Test suite() {
+    return new TestSuite(SurroundSCMChangeLogParserTest.class);
+  }
+}
@@ -0,0 +1,99 @@
+package hudson.scm;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * SurroundSCMChangeLogSet Tester.
+ */
+public class SurroundSCMChangeLogSetTest extends TestCase {
+
+  public SurroundSCMChangeLogSetTest(String name) {
+    super(name);
+  }
+
+  public void testTypedFields() throws Exception {
+    SurroundSCMChangeLogSet set = new SurroundSCMChangeLogSet(null, null);
+    SurroundSCMChangeLogSet.SurroundSCMChangeLogSetEntry entry = new SurroundSCMChangeLogSet.SurroundSCMChangeLogSetEntry(
+            "Mainline/Repo/a.txt", "comment", "21", "Check in", "20161103144114", set, "user", "");
+    assertEquals("20161103144114", entry.getDate());
+    assertEquals(SurroundSCMChangeRecord.parseDate("20161103144114").getTime(), entry.getTimestamp());
+    assertEquals("21", entry.getVersion());
+    assertEquals("Mainline/Repo/a.txt", entry.getPath());
+
+    SurroundSCMChangeLogSet.SurroundSCMAffectedFile file = entry.getAffectedFiles().iterator().next();
+    assertEquals(21, file.getVersionNumber());
+    assertEquals("Mainline/Repo", file.getRepository());
+    assertEquals("a.txt", file.getFilename());
+  }
+
+  public void testUnknownValues() throws Exception {
+    SurroundSCMChangeLogSet set = new SurroundSCMChangeLogSet(null, null);
+    SurroundSCMChangeLogSet.SurroundSCMChangeLogSetEntry entry = new SurroundSCMChangeLogSet.SurroundSCMChangeLogSetEntry(
+            "a.txt", "comment", "", "Add", "garbage", set, "user", "");
+    assertEquals(-1, entry.getTimestamp());
+    assertEquals("", entry.getDate());
+    assertEquals("", entry.getVersion());
+    assertEquals("a.txt", entry.getPath());
+  }
+
+  public void testSharedStrings() throws Exception {
+    SurroundSCMChangeLogSet set = new SurroundSCMChangeLogSet(null, null);
+    SurroundSCMChangeLogSet.SurroundSCMChangeLogSetEntry first = new SurroundSCMChangeLogSet.SurroundSCMChangeLogSetEntry(
+            new String("Mainline/Repo/a.txt"), "one", "1", new String("Check in"), "20161103144114", set,
+            new String("user"), "");
+    SurroundSCMChangeLogSet.SurroundSCMChangeLogSetEntry second = new SurroundSCMChangeLogSet.SurroundSCMChangeLogSetEntry(
+            new String("Mainline/Repo/b.txt"), "two", "1", new String("Check in"), "20161103144115", set,
+            new String("user"), "");
+    SurroundSCMChangeLogSet.SurroundSCMAffectedFile a = first.getAffectedFiles().iterator().next();
+    SurroundSCMChangeLogSet.SurroundSCMAffectedFile b = second.getAffectedFiles().iterator().next();
+    assertSame(a.getRepository(), b.getRepository());
+    assertSame(a.getAction(), b.getAction());
+    assertSame(first.getUserName(), second.getUserName());
+  }
+
+  public void testCommentsAreNotShared() throws Exception {
+    SurroundSCMChangeLogSet set = new SurroundSCMChangeLogSet(null, null);
+    SurroundSCMChangeLogSet.SurroundSCMChangeLogSetEntry first = new SurroundSCMChangeLogSet.SurroundSCMChangeLogSetEntry(
+            "Mainline/Repo/a.txt", new String("Fix"), "1", "Check in", "20161103144114", set, "user", "");
+    SurroundSCMChangeLogSet.SurroundSCMChangeLogSetEntry second = new SurroundSCMChangeLogSet.SurroundSCMChangeLogSetEntry(
+            "Mainline/Repo/b.txt", new String("Fix"), "1", "Check in", "20161103144115", set, "user", "");
+    assertEquals(first.getComment(), second.getComment());
+    assertNotSame(first.getComment(), second.getComment());
+  }
+
+  public void testDates() throws Exception {
+    SurroundSCMChangeLogSet set = new SurroundSCMChangeLogSet(null, null);
+    for (String date : new String[]{"20161103144114", "20170101000000", "20171231235959"}) {
+      SurroundSCMChangeLogSet.SurroundSCMChangeLogSetEntry entry = new SurroundSCMChangeLogSet.SurroundSCMChangeLogSetEntry(
+              "Mainline/Repo/a.txt", "comment", "1", "Check in", date, set, "user", "");
+      assertEquals(date, entry.getDate());
+    }
+  }
+
+  public void testAffectedPaths() throws Exception {
+    SurroundSCMChangeLogSet set = new SurroundSCMChangeLogSet(null, null);
+    SurroundSCMChangeLogSet.SurroundSCMChangeLogSetEntry entry = new SurroundSCMChangeLogSet.SurroundSCMChangeLogSetEntry(
+            "Mainline/Repo/a.txt", "comment", "1", "Check in", "20161103144114", set, "user", "");
+    assertEquals(Collections.singletonList("Mainline/Repo/a.txt"), entry.getAffectedPaths());
+
+    entry.addFile("Mainline/Repo/b.txt", "2", "Add");
+    Collection<String> paths = entry.getAffectedPaths();
+    assertEquals(Arrays.asList("Mainline/Repo/a.txt", "Mainline/Repo/b.txt"), paths);
+    try {
+      paths.add("Mainline/Repo/c.txt");
+      fail("affected paths must not be modifiable");
+    } catch (UnsupportedOperationException e) {
+      // expected
+    }
+  }
+
+  public static Test suite() {
+    return new TestSuite(SurroundSCMChangeLogSetTest.class);
+  }
+}
@@ -0,0 +1,76 @@
+package hudson.scm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.concurrent.Future;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import hudson.model.FreeStyleBuild;
+import hudson.model.User;
+import hudson.tasks.Mailer;
+
+/**
+ * SurroundSCMChangeLogSet Tester for the Jenkins users of the changelog, which need a running Jenkins.
+ */
+public class SurroundSCMChangeLogSetUsersTest {
+  @Rule
+  public JenkinsRule j = new JenkinsRule();
+
+  @Rule
+  public TestName name = new TestName();
+
+  private FreeStyleBuild build;
+
+  @Before
+  public void setUp() throws Exception {
+    // Builds are remembered by id across Jenkins instances, so every test has its own job.
+    build = j.buildAndAssertSuccess(j.createFreeStyleProject(name.getMethodName()));
+  }
+
+  private SurroundSCMChangeLogSet parse(String userName, String email) {
+    SurroundSCMChangeLogSet set = new SurroundSCMChangeLogSet(build, null);
+    set.addEntry(new SurroundSCMChangeLogSet.SurroundSCMChangeLogSetEntry("Mainline/Repo/a.txt", "comment", "1",
+            "Check in", "20170101000000", set, userName, email));
+    return set;
+  }
+
+  @Test
+  public void usersAreResolvedOnFirstUse() throws Exception {
+    SurroundSCMChangeLogSet set = parse("lazy", "lazy@example.com");
+    assertNull("Parsing must not create the user", User.getById("lazy", false));
+
+    User author = set.iterator().next().getAuthor();
+    assertEquals("lazy", author.getId());
+    assertSame(author, set.getUser("lazy"));
+  }
+
+  @Test
+  public void mailAddressesAreUpdatedOncePerBuild() throws Exception {
+    Future<?> update = parse("mailed", "first@example.com").updateMailAddresses();
+    assertNotNull(update);
+    update.get();
+    Mailer.UserProperty property = User.getById("mailed", false).getProperty(Mailer.UserProperty.class);
+    assertEquals("first@example.com", property.getAddress());
+
+    // The change set is parsed again for the next view of the build.
+    assertNull(parse("mailed", "second@example.com").updateMailAddresses());
+    assertSame(property, User.getById("mailed", false).getProperty(Mailer.UserProperty.class));
+  }
+
+  @Test
+  public void configuredAddressesAreKept() throws Exception {
+    User user = User.getById("configured", true);
+    user.addProperty(new Mailer.UserProperty("own@example.com"));
+
+    parse("configured", "changelog@example.com").updateMailAddresses().get();
+    assertEquals("own@example.com", user.getProperty(Mailer.UserProperty.class).getAddress());
+  }
+}
@@ -0,0 +1,133 @@
+package hudson.scm;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermission;
+
+import hudson.Util;
+
+/**
+ * SurroundSCMContentStore Tester.
+ */
+public class SurroundSCMContentStoreTest extends TestCase {
+  private Path directory;
+  private Path store;
+  private Path cache;
+  private Path index;
+
+  public SurroundSCMContentStoreTest(String name) {
+    super(name);
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    directory = Files.createTempDirectory("sscm-node");
+    store = directory.resolve(SurroundSCMContentStore.DIRECTORY_NAME);
+    cache = Files.createDirectories(directory.resolve("sscm-cache").resolve("key"));
+    index = directory.resolve("sscm-cache").resolve("key.index.gz");
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    Util.deleteRecursive(directory.toFile());
+  }
+
+  private Path write(String path, String content) throws Exception {
+    Path file = cache.resolve(path);
+    Files.createDirectories(file.getParent());
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    return file;
+  }
+
+  private static BasicFileAttributes attributes(Path file) throws Exception {
+    return Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+  }
+
+  private static String read(Path file) throws Exception {
+    return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+  }
+
+  public void testStoresEachContentOnce() throws Exception {
+    Path a = write("a.txt", "same");
+    Path b = write("sub/b.txt", "same");
+    Path c = write("c.txt", "other");
+    SurroundSCMContentStore contentStore = new SurroundSCMContentStore(store, index);
+    Path objectA = contentStore.intern("a.txt", a, attributes(a));
+    Path objectB = contentStore.intern("sub/b.txt", b, attributes(b));
+    Path objectC = contentStore.intern("c.txt", c, attributes(c));
+
+    assertEquals(objectA, objectB);
+    assertFalse(objectA.equals(objectC));
+    assertEquals("same", read(objectA));
+    assertFalse(Files.getPosixFilePermissions(objectA).contains(PosixFilePermission.OWNER_WRITE));
+    assertEquals(objectA.getParent().getFileName().toString(), objectA.getFileName().toString().substring(0, 2));
+  }
+
+  public void testCacheFilesAreNotLinked() throws Exception {
+    Path a = write("a.txt", "content");
+    Path object = new SurroundSCMContentStore(store, index).intern("a.txt", a, attributes(a));
+    assertFalse(Files.isSameFile(a, object));
+
+    // 'sscm get' rewriting the cache file in place leaves the object alone.
+    Files.write(a, "changed".getBytes(StandardCharsets.UTF_8));
+    assertEquals("content", read(object));
+  }
+
+  public void testIndexSkipsHashingUnchangedFiles() throws Exception {
+    Path a = write("a.txt", "aaaa");
+    SurroundSCMContentStore first = new SurroundSCMContentStore(store, index);
+    Path object = first.intern("a.txt", a, attributes(a));
+    first.save();
+    assertTrue(Files.isRegularFile(index));
+
+    // Same size and time: the indexed hash is trusted, the file is not read again.
+    FileTime time = Files.getLastModifiedTime(a);
+    Files.write(a, "bbbb".getBytes(StandardCharsets.UTF_8));
+    Files.setLastModifiedTime(a, time);
+    assertEquals(object, new SurroundSCMContentStore(store, index).intern("a.txt", a, attributes(a)));
+
+    // A new time means 'sscm get' replaced it.
+    Files.setLastModifiedTime(a, FileTime.fromMillis(time.toMillis() + 5000));
+    Path changed = new SurroundSCMContentStore(store, index).intern("a.txt", a, attributes(a));
+    assertFalse(object.equals(changed));
+    assertEquals("bbbb", read(changed));
+  }
+
+  public void testDamagedIndex() throws Exception {
+    Files.createDirectories(index.getParent());
+    Files.write(index, "not gzip".getBytes(StandardCharsets.UTF_8));
+    Path a = write("a.txt", "aaaa");
+    assertEquals("aaaa", read(new SurroundSCMContentStore(store, index).intern("a.txt", a, attributes(a))));
+  }
+
+  public void testPruneDeletesUnlinkedObjects() throws Exception {
+    Path a = write("a.txt", "linked");
+    Path b = write("b.txt", "unlinked");
+    SurroundSCMContentStore contentStore = new SurroundSCMContentStore(store, index);
+    Path linked = contentStore.intern("a.txt", a, attributes(a));
+    Path unlinked = contentStore.intern("b.txt", b, attributes(b));
+    Path workspace = Files.createDirectories(directory.resolve("workspace"));
+    Files.createLink(workspace.resolve("a.txt"), linked);
+
+    // Objects a running populate may be about to link are kept.
+    assertEquals(0L, (long) new SurroundSCMContentStore.Prune().invoke(store.toFile(), null));
+    assertTrue(Files.exists(unlinked));
+
+    assertEquals(1L, (long) new SurroundSCMContentStore.Prune(-1000).invoke(store.toFile(), null));
+    assertFalse(Files.exists(unlinked));
+    assertTrue(Files.exists(linked));
+    assertEquals("linked", read(workspace.resolve("a.txt")));
+  }
+
+  public static Test suite() {
+    return new TestSuite(SurroundSCMContentStoreTest.class);
+  }
+}
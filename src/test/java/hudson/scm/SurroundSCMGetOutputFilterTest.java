@@ -0,0 +1,82 @@
+package hudson.scm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * SurroundSCMGetOutputFilter Tester.
+ */
+public class SurroundSCMGetOutputFilterTest extends TestCase {
+  public SurroundSCMGetOutputFilterTest(String name) {
+    super(name);
+  }
+
+  public void testCountsFileLinesAndPassesTheRestOn() throws Exception {
+    ByteArrayOutputStream log = new ByteArrayOutputStream();
+    ByteArrayOutputStream raw = new ByteArrayOutputStream();
+    SurroundSCMGetOutputFilter filter = new SurroundSCMGetOutputFilter(new PrintStream(log, true, "UTF-8"), raw, "raw.gz");
+    String output = "Mainline/Project/a.txt version 3 got\r\n"
+            + "Mainline/Project/b.txt replaced\n"
+            + "Mainline/Project/c.txt is current, skipped\n"
+            + "Error: unable to get Mainline/Project/d.txt\n"
+            + "[2] Mainline/Project/e.txt version 1 got";
+    filter.write(output.getBytes(StandardCharsets.UTF_8));
+    filter.close();
+
+    assertEquals(2, filter.getFetched());
+    assertEquals(1, filter.getReplaced());
+    assertEquals(1, filter.getSkipped());
+    assertEquals(raw.size(), filter.getBytes());
+
+    String logged = log.toString("UTF-8");
+    assertTrue(logged.startsWith("Error: unable to get Mainline/Project/d.txt"));
+    assertFalse(logged.contains("a.txt"));
+    assertTrue(logged.contains("4 files (2 fetched, 1 replaced, 1 skipped)"));
+    assertTrue(raw.toString("UTF-8").contains("Mainline/Project/b.txt replaced\n"));
+  }
+
+  public void testClassifiesOnTheStatusWordOnly() throws Exception {
+    assertEquals(SurroundSCMGetOutputFilter.Kind.FETCHED,
+            SurroundSCMGetOutputFilter.classify("C:\\work\\fetch\\replaced.txt version 3 got"));
+    assertEquals(SurroundSCMGetOutputFilter.Kind.FETCHED,
+            SurroundSCMGetOutputFilter.classify("/var/ws/errors/warning-not-found.txt version 12 retrieved."));
+    assertEquals(SurroundSCMGetOutputFilter.Kind.REPLACED,
+            SurroundSCMGetOutputFilter.classify("/var/ws/up to date/current.txt replaced"));
+    assertEquals(SurroundSCMGetOutputFilter.Kind.SKIPPED,
+            SurroundSCMGetOutputFilter.classify("/var/ws/fetched/got.txt is current"));
+    assertEquals(SurroundSCMGetOutputFilter.Kind.REPLACED,
+            SurroundSCMGetOutputFilter.classify("Replaced: /var/ws/failures/a.txt"));
+  }
+
+  public void testKeepsProblemsAndUnknownLinesInTheLog() throws Exception {
+    assertEquals(SurroundSCMGetOutputFilter.Kind.OTHER,
+            SurroundSCMGetOutputFilter.classify("Error: unable to get /var/ws/a.txt, the file is current"));
+    assertEquals(SurroundSCMGetOutputFilter.Kind.OTHER,
+            SurroundSCMGetOutputFilter.classify("Warning: /var/ws/a.txt skipped"));
+    assertEquals(SurroundSCMGetOutputFilter.Kind.OTHER,
+            SurroundSCMGetOutputFilter.classify("Getting files from Mainline/Project/version"));
+    assertEquals(SurroundSCMGetOutputFilter.Kind.OTHER, SurroundSCMGetOutputFilter.classify("/var/ws/got"));
+    assertEquals(SurroundSCMGetOutputFilter.Kind.OTHER, SurroundSCMGetOutputFilter.classify(""));
+  }
+
+  public void testIgnoresTheWorkerPrefix() throws Exception {
+    assertEquals(SurroundSCMGetOutputFilter.Kind.FETCHED,
+            SurroundSCMGetOutputFilter.classify("[1] Mainline/Project/a.txt version 3 got"));
+    assertEquals(SurroundSCMGetOutputFilter.Kind.REPLACED,
+            SurroundSCMGetOutputFilter.classify("[12] Replaced: /var/ws/a.txt"));
+    assertEquals(SurroundSCMGetOutputFilter.Kind.OTHER,
+            SurroundSCMGetOutputFilter.classify("[2] Error: unable to get /var/ws/a.txt, skipped"));
+    assertEquals(SurroundSCMGetOutputFilter.Kind.OTHER,
+            SurroundSCMGetOutputFilter.classify("[3] Warning: /var/ws/a.txt skipped"));
+    assertEquals(SurroundSCMGetOutputFilter.Kind.OTHER, SurroundSCMGetOutputFilter.classify("[4] got"));
+  }
+
+  public static Test suite() {
+    return new TestSuite(SurroundSCMGetOutputFilterTest.class);
+  }
+}
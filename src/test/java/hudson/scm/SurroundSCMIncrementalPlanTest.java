@@ -0,0 +1,141 @@
+package hudson.scm;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * SurroundSCMIncrementalPlan Tester.
+ */
+public class SurroundSCMIncrementalPlanTest extends TestCase {
+  private final static String REPOSITORY = "Mainline/Repo";
+  private final static SurroundSCMRepositoryScope WHOLE = new SurroundSCMRepositoryScope(null, null);
+
+  public SurroundSCMIncrementalPlanTest(String name) {
+    super(name);
+  }
+
+  private static SurroundSCMChangeRecord record(String repository, String file, String version, String action, String date) {
+    return new SurroundSCMChangeRecord(repository, file, version, action, date, "", "user", "");
+  }
+
+  private static SurroundSCMIncrementalPlan plan(SurroundSCMChangeRecord... records) {
+    return SurroundSCMIncrementalPlan.plan(REPOSITORY, WHOLE, Arrays.asList(records), false, 500);
+  }
+
+  public void testGetsAndDeletes() throws Exception {
+    SurroundSCMIncrementalPlan plan = plan(
+            record("Mainline/Repo", "a.txt", "3", "Check in", "20200101120000"),
+            record("Mainline/Repo/sub", "b.txt", "1", "Add", "20200101120000"),
+            record("Mainline/Repo/sub", "c.txt", "4", "Delete", "20200101120000"));
+    assertFalse(plan.isFullGetRequired());
+    assertNull(plan.getFullGetReason());
+    assertEquals(Collections.singletonList("a.txt"), plan.getFilesByRepository().get("Mainline/Repo"));
+    assertEquals(Collections.singletonList("b.txt"), plan.getFilesByRepository().get("Mainline/Repo/sub"));
+    assertEquals("3", plan.getUpdatedFiles().get("a.txt"));
+    assertEquals("1", plan.getUpdatedFiles().get("sub/b.txt"));
+    assertEquals(Collections.singletonList("sub/c.txt"), plan.getDeletedFiles());
+  }
+
+  public void testLatestActionWins() throws Exception {
+    // Records are applied by date, not by the order of the 'cc' output.
+    SurroundSCMIncrementalPlan deleted = plan(
+            record("Mainline/Repo", "a.txt", "2", "Remove", "20200102120000"),
+            record("Mainline/Repo", "a.txt", "1", "Check in", "20200101120000"));
+    assertTrue(deleted.getUpdatedFiles().isEmpty());
+    assertEquals(Collections.singletonList("a.txt"), deleted.getDeletedFiles());
+
+    SurroundSCMIncrementalPlan restored = plan(
+            record("Mainline/Repo", "a.txt", "2", "Destroy", "20200101120000"),
+            record("Mainline/Repo", "a.txt", "3", "Add", "20200102120000"));
+    assertEquals("3", restored.getUpdatedFiles().get("a.txt"));
+    assertTrue(restored.getDeletedFiles().isEmpty());
+  }
+
+  public void testRenameMoveShareFallBack() throws Exception {
+    for (String action : Arrays.asList("Rename", "Move", "Share", "Renamed repository")) {
+      SurroundSCMIncrementalPlan plan = plan(
+              record("Mainline/Repo", "a.txt", "1", "Check in", "20200101120000"),
+              record("Mainline/Repo", "b.txt", "1", action, "20200101120000"));
+      assertTrue(action, plan.isFullGetRequired());
+      assertTrue(plan.getFullGetReason(), plan.getFullGetReason().contains("'" + action + "'"));
+      assertTrue(plan.getFilesByRepository().isEmpty());
+    }
+  }
+
+  public void testOverflow() throws Exception {
+    SurroundSCMIncrementalPlan plan = SurroundSCMIncrementalPlan.plan(REPOSITORY, WHOLE,
+            Collections.singletonList(record("Mainline/Repo", "a.txt", "1", "Add", "20200101120000")), true, 500);
+    assertTrue(plan.isFullGetRequired());
+    assertEquals("More than 500 changes since the last build", plan.getFullGetReason());
+  }
+
+  public void testOutsideOfRepository() throws Exception {
+    SurroundSCMIncrementalPlan plan = plan(
+            record("Mainline/Repo", "a.txt", "1", "Add", "20200101120000"),
+            record("Mainline/RepoOther", "b.txt", "1", "Add", "20200101120000"));
+    assertTrue(plan.isFullGetRequired());
+    assertTrue(plan.getFullGetReason().contains("Mainline/RepoOther/b.txt"));
+  }
+
+  public void testOutOfScopeIgnored() throws Exception {
+    SurroundSCMRepositoryScope scope = new SurroundSCMRepositoryScope("core", null);
+    List<SurroundSCMChangeRecord> records = Arrays.asList(
+            record("Mainline/Repo/core", "a.txt", "1", "Add", "20200101120000"),
+            record("Mainline/Repo/web", "b.txt", "1", "Rename", "20200101120000"));
+    SurroundSCMIncrementalPlan plan = SurroundSCMIncrementalPlan.plan(REPOSITORY, scope, records, false, 500);
+    assertFalse(plan.isFullGetRequired());
+    assertEquals(Collections.singletonList("Mainline/Repo/core"),
+            Arrays.asList(plan.getFilesByRepository().keySet().toArray()));
+  }
+
+  public void testRelativeRepository() throws Exception {
+    assertEquals("", SurroundSCMIncrementalPlan.getRelativeRepository(REPOSITORY, "Mainline/Repo"));
+    assertEquals("a/b", SurroundSCMIncrementalPlan.getRelativeRepository(REPOSITORY, "Mainline/Repo/a/b"));
+    assertNull(SurroundSCMIncrementalPlan.getRelativeRepository(REPOSITORY, "Mainline/RepoOther"));
+    assertNull(SurroundSCMIncrementalPlan.getRelativeRepository(REPOSITORY, "Mainline"));
+  }
+
+  public void testSplit() throws Exception {
+    List<String> names = Arrays.asList("a.txt", "bb.txt", "c.txt", "d.txt");
+    // Every name counts 3 more characters: "a.txt" is 8.
+    assertEquals(Arrays.asList(Arrays.asList("a.txt", "bb.txt"), Arrays.asList("c.txt", "d.txt")),
+            SurroundSCMIncrementalPlan.split(names, 17));
+    assertEquals(Collections.singletonList(names), SurroundSCMIncrementalPlan.split(names, 1000));
+    assertTrue(SurroundSCMIncrementalPlan.split(Collections.<String>emptyList(), 1000).isEmpty());
+  }
+
+  public void testSplitLongName() throws Exception {
+    assertEquals(Arrays.asList(Collections.singletonList("a.txt"), Collections.singletonList("long-name.txt"),
+            Collections.singletonList("b.txt")),
+            SurroundSCMIncrementalPlan.split(Arrays.asList("a.txt", "long-name.txt", "b.txt"), 10));
+  }
+
+  public void testSplitManyFiles() throws Exception {
+    List<String> names = new ArrayList<>();
+    for (int i = 0; i < 500; i++) {
+      names.add("Some/Deep/Directory/source-file-" + i + ".java");
+    }
+    List<List<String>> batches = SurroundSCMIncrementalPlan.split(names, 6000);
+    assertTrue(batches.size() > 1);
+    List<String> joined = new ArrayList<>();
+    for (List<String> batch : batches) {
+      int chars = 0;
+      for (String name : batch) {
+        chars += name.length() + 3;
+      }
+      assertTrue(chars <= 6000);
+      joined.addAll(batch);
+    }
+    assertEquals(names, joined);
+  }
+
+  public static Test suite() {
+    return new TestSuite(SurroundSCMIncrementalPlanTest.class);
+  }
+}
@@ -0,0 +1,184 @@
+package hudson.scm;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * SurroundSCMPollCoordinator Tester.
+ */
+public class SurroundSCMPollCoordinatorTest extends TestCase {
+  private final static String GROUP = "sscm://server:4900//branch//Mainline";
+  private final static PrintStream LOGGER = new PrintStream(new ByteArrayOutputStream());
+
+  private static final List<SurroundSCMChangeRecord> RECORDS = Arrays.asList(
+          record("Mainline/A", "20200101120000"),
+          record("Mainline/A/Sub", "20200102120000"),
+          record("Mainline/B", "20200103120000"),
+          record("Mainline/C", "20200104120000"));
+
+  public SurroundSCMPollCoordinatorTest(String name) {
+    super(name);
+  }
+
+  private static SurroundSCMChangeRecord record(String repository, String date) {
+    return new SurroundSCMChangeRecord(repository, "file.txt", "1", "Check in", date, "", "user", "");
+  }
+
+  public void testCommonAncestor() throws Exception {
+    assertEquals("Mainline", SurroundSCMPollCoordinator.commonAncestor("Mainline/A/X", "Mainline/B"));
+    assertEquals("Mainline/A", SurroundSCMPollCoordinator.commonAncestor("Mainline/A/X", "Mainline/A"));
+    assertEquals("Mainline/A", SurroundSCMPollCoordinator.commonAncestor("Mainline/A", "Mainline/A"));
+    assertEquals("", SurroundSCMPollCoordinator.commonAncestor("Mainline/A", "Other/A"));
+  }
+
+  public void testIsSameOrBelow() throws Exception {
+    assertTrue(SurroundSCMPollCoordinator.isSameOrBelow("Mainline/A", "Mainline/A"));
+    assertTrue(SurroundSCMPollCoordinator.isSameOrBelow("Mainline/A/Sub", "Mainline/A"));
+    assertFalse(SurroundSCMPollCoordinator.isSameOrBelow("Mainline/AB", "Mainline/A"));
+    assertFalse(SurroundSCMPollCoordinator.isSameOrBelow("Mainline", "Mainline/A"));
+  }
+
+  public void testFilterByRepositoryAndDate() throws Exception {
+    Date from = new java.text.SimpleDateFormat(SurroundSCMChangeRecord.DATE_FORMAT).parse("20200102000000");
+    assertEquals(1, SurroundSCMPollCoordinator.filter(RECORDS, "Mainline/A", from).size());
+    assertEquals(3, SurroundSCMPollCoordinator.filter(RECORDS, "Mainline", from).size());
+  }
+
+  public void testSiblingPollsShareOneQuery() throws Exception {
+    // The batch closes as soon as every due sibling joined, well before the batch time.
+    final SurroundSCMPollCoordinator coordinator = new SurroundSCMPollCoordinator(20000, 30000);
+    final AtomicInteger queries = new AtomicInteger();
+    final List<String> queriedRepositories = Collections.synchronizedList(new ArrayList<String>());
+    final SurroundSCMPollCoordinator.Query query = (repository, from, to) -> {
+      queries.incrementAndGet();
+      queriedRepositories.add(repository);
+      return RECORDS;
+    };
+    final Date from = new Date(0);
+    final Date to = new Date();
+    for (String repository : Arrays.asList("Mainline/A", "Mainline/B", "Mainline/C")) {
+      coordinator.isShared(GROUP, repository);
+    }
+
+    long started = System.currentTimeMillis();
+    ExecutorService executor = Executors.newFixedThreadPool(3);
+    try {
+      List<Future<List<SurroundSCMChangeRecord>>> results = new ArrayList<>();
+      for (final String repository : Arrays.asList("Mainline/A", "Mainline/B", "Mainline/C")) {
+        results.add(executor.submit(new Callable<List<SurroundSCMChangeRecord>>() {
+          @Override
+          public List<SurroundSCMChangeRecord> call() throws Exception {
+            return coordinator.poll(GROUP, repository, repository, from, to, query, LOGGER);
+          }
+        }));
+      }
+      assertEquals(2, results.get(0).get().size());
+      assertEquals(1, results.get(1).get().size());
+      assertEquals(1, results.get(2).get().size());
+    } finally {
+      executor.shutdownNow();
+    }
+    assertTrue(System.currentTimeMillis() - started < 10000);
+    assertEquals(1, queries.get());
+    assertEquals("Mainline", queriedRepositories.get(0));
+
+    // A later poll below the cached query's repository reuses its result.
+    assertEquals(2, coordinator.poll(GROUP, "Mainline/A", "Mainline/A", from, to, query, LOGGER).size());
+    assertEquals(1, queries.get());
+  }
+
+  public void testLonePollDoesNotWait() throws Exception {
+    SurroundSCMPollCoordinator coordinator = new SurroundSCMPollCoordinator(20000, 30000);
+    SurroundSCMPollCoordinator.Query query = (repository, from, to) -> RECORDS;
+    assertFalse(coordinator.isShared(GROUP, "job-a"));
+    long started = System.currentTimeMillis();
+    assertEquals(2, coordinator.poll(GROUP, "job-a", "Mainline/A", new Date(0), new Date(), query, LOGGER).size());
+    assertTrue(System.currentTimeMillis() - started < 10000);
+  }
+
+  public void testJoinDoesNotWidenBeyondLimit() throws Exception {
+    final SurroundSCMPollCoordinator coordinator = new SurroundSCMPollCoordinator(500, 30000, 30000, 60000);
+    final AtomicInteger queries = new AtomicInteger();
+    final List<Date> queriedFrom = Collections.synchronizedList(new ArrayList<Date>());
+    final SurroundSCMPollCoordinator.Query query = (repository, from, to) -> {
+      queries.incrementAndGet();
+      queriedFrom.add(from);
+      return RECORDS;
+    };
+    final Date recent = new Date(System.currentTimeMillis() - 1000);
+    final Date old = new Date(0);
+    coordinator.isShared(GROUP, "job-a");
+    coordinator.isShared(GROUP, "job-b");
+
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Future<List<SurroundSCMChangeRecord>> first = executor.submit(
+              () -> coordinator.poll(GROUP, "job-a", "Mainline/A", recent, new Date(), query, LOGGER));
+      Thread.sleep(100);
+      Future<List<SurroundSCMChangeRecord>> second = executor.submit(
+              () -> coordinator.poll(GROUP, "job-b", "Mainline/B", old, new Date(), query, LOGGER));
+      assertEquals(0, first.get().size());
+      assertEquals(1, second.get().size());
+    } finally {
+      executor.shutdownNow();
+    }
+    assertEquals(2, queries.get());
+    assertTrue(queriedFrom.contains(recent));
+    assertTrue(queriedFrom.contains(old));
+  }
+
+  public void testIsShared() throws Exception {
+    SurroundSCMPollCoordinator coordinator = new SurroundSCMPollCoordinator(0, 30000, 30000, 60000);
+    assertFalse(coordinator.isShared(GROUP, "job-a"));
+    assertFalse(coordinator.isShared(GROUP, "job-a"));
+    assertFalse(coordinator.isShared(GROUP + "/other", "job-b"));
+    assertTrue(coordinator.isShared(GROUP, "job-b"));
+    assertTrue(coordinator.isShared(GROUP, "job-a"));
+  }
+
+  public void testMembersExpire() throws Exception {
+    SurroundSCMPollCoordinator coordinator = new SurroundSCMPollCoordinator(0, 30000, 50, 60000);
+    assertFalse(coordinator.isShared(GROUP, "job-a"));
+    Thread.sleep(100);
+    assertFalse(coordinator.isShared(GROUP, "job-b"));
+  }
+
+  public void testFailuresAreNotCached() throws Exception {
+    SurroundSCMPollCoordinator coordinator = new SurroundSCMPollCoordinator(0, 30000);
+    final AtomicInteger queries = new AtomicInteger();
+    SurroundSCMPollCoordinator.Query failing = (repository, from, to) -> {
+      queries.incrementAndGet();
+      throw new java.io.IOException("boom");
+    };
+    try {
+      coordinator.poll(GROUP, "job-a", "Mainline/A", new Date(0), new Date(), failing, LOGGER);
+      fail("Expected the query failure to be reported");
+    } catch (java.io.IOException expected) {
+      // expected
+    }
+    SurroundSCMPollCoordinator.Query working = (repository, from, to) -> {
+      queries.incrementAndGet();
+      return RECORDS;
+    };
+    assertEquals(2, coordinator.poll(GROUP, "job-a", "Mainline/A", new Date(0), new Date(), working, LOGGER).size());
+    assertEquals(2, queries.get());
+  }
+
+  public static Test suite() {
+    return new TestSuite(SurroundSCMPollCoordinatorTest.class);
+  }
+}
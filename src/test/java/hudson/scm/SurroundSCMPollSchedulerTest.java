@@ -0,0 +1,148 @@
+package hudson.scm;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.Random;
+
+/**
+ * SurroundSCMPollScheduler Tester.
+ */
+public class SurroundSCMPollSchedulerTest extends TestCase {
+  private final static String JOB = "folder/job";
+  private final static long BASE = 60000L;
+  private final static long MAX = 900000L;
+
+  public SurroundSCMPollSchedulerTest(String name) {
+    super(name);
+  }
+
+  /**
+   * @return Returns a random source that always yields 'value', 0.5 means no jitter.
+   */
+  private static Random fixed(final double value) {
+    return new Random() {
+      @Override
+      public double nextDouble() {
+        return value;
+      }
+    };
+  }
+
+  public void testDueWithoutHistory() throws Exception {
+    SurroundSCMPollScheduler scheduler = new SurroundSCMPollScheduler(BASE, MAX, fixed(0.5));
+    assertTrue(scheduler.isDue(JOB, 0));
+    assertEquals(0, scheduler.getNextDueAt(JOB));
+  }
+
+  public void testQuietPollsBackOff() throws Exception {
+    SurroundSCMPollScheduler scheduler = new SurroundSCMPollScheduler(BASE, MAX, fixed(0.5));
+    scheduler.record(JOB, 0, 10, false);
+    assertEquals(BASE, scheduler.getNextDueAt(JOB));
+    assertFalse(scheduler.isDue(JOB, BASE - 1));
+    assertTrue(scheduler.isDue(JOB, BASE));
+
+    scheduler.record(JOB, 0, 10, false);
+    assertEquals(2 * BASE, scheduler.getNextDueAt(JOB));
+    scheduler.record(JOB, 0, 10, false);
+    assertEquals(4 * BASE, scheduler.getNextDueAt(JOB));
+    for (int i = 0; i < 30; i++) {
+      scheduler.record(JOB, 0, 10, false);
+    }
+    assertEquals(MAX, scheduler.getNextDueAt(JOB));
+  }
+
+  public void testChangesReset() throws Exception {
+    SurroundSCMPollScheduler scheduler = new SurroundSCMPollScheduler(BASE, MAX, fixed(0.5));
+    scheduler.record(JOB, 0, 10, false);
+    scheduler.record(JOB, 0, 10, false);
+    scheduler.record(JOB, 1000, 10, true);
+    assertEquals(1000 + 10 * 10, scheduler.getNextDueAt(JOB));
+    assertTrue(scheduler.isDue(JOB, 1100));
+  }
+
+  public void testSlowQueriesStretchInterval() throws Exception {
+    SurroundSCMPollScheduler scheduler = new SurroundSCMPollScheduler(BASE, MAX, fixed(0.5));
+    scheduler.record(JOB, 0, 20000, false);
+    assertEquals(200000, scheduler.getNextDueAt(JOB));
+  }
+
+  public void testJitterSpansACronTick() throws Exception {
+    SurroundSCMPollScheduler early = new SurroundSCMPollScheduler(BASE, MAX, fixed(0.0));
+    early.record(JOB, 0, 10, false);
+    assertEquals("Due again on the next tick", 0, early.getNextDueAt(JOB));
+
+    SurroundSCMPollScheduler late = new SurroundSCMPollScheduler(BASE, MAX, fixed(1.0));
+    late.record(JOB, 0, 10, false);
+    assertEquals(BASE + SurroundSCMPollScheduler.TICK_MILLIS, late.getNextDueAt(JOB));
+  }
+
+  public void testJitterOfLongIntervals() throws Exception {
+    SurroundSCMPollScheduler early = new SurroundSCMPollScheduler(BASE, MAX, fixed(0.0));
+    SurroundSCMPollScheduler late = new SurroundSCMPollScheduler(BASE, MAX, fixed(1.0));
+    for (int i = 0; i < 10; i++) {
+      early.record(JOB, 0, 10, false);
+      late.record(JOB, 0, 10, false);
+    }
+    assertEquals(MAX - MAX / 10, early.getNextDueAt(JOB));
+    assertEquals(MAX + MAX / 10, late.getNextDueAt(JOB));
+  }
+
+  public void testJitterOfShortIntervals() throws Exception {
+    SurroundSCMPollScheduler early = new SurroundSCMPollScheduler(BASE, MAX, fixed(0.0));
+    early.record(JOB, 1000, 10, true);
+    assertEquals(1000, early.getNextDueAt(JOB));
+
+    SurroundSCMPollScheduler late = new SurroundSCMPollScheduler(BASE, MAX, fixed(1.0));
+    late.record(JOB, 1000, 10, true);
+    assertEquals(1000 + 2 * 10 * 10, late.getNextDueAt(JOB));
+  }
+
+  public void testReset() throws Exception {
+    SurroundSCMPollScheduler scheduler = new SurroundSCMPollScheduler(BASE, MAX, fixed(0.5));
+    for (int i = 0; i < 5; i++) {
+      scheduler.record(JOB, 0, 10, false);
+    }
+    scheduler.record("folder/job-2", 0, 10, false);
+    assertFalse(scheduler.isDue(JOB, 1000));
+
+    scheduler.reset(JOB);
+    assertTrue(scheduler.isDue(JOB, 1000));
+    assertFalse(scheduler.isDue("folder/job-2", 1000));
+  }
+
+  public void testForget() throws Exception {
+    SurroundSCMPollScheduler scheduler = new SurroundSCMPollScheduler(BASE, MAX, fixed(0.5));
+    scheduler.record(JOB, 0, 10, false);
+    scheduler.record("folder/other", 0, 10, false);
+    scheduler.record("folder-2/job", 0, 10, false);
+    scheduler.forget(JOB);
+    assertEquals(2, scheduler.size());
+    assertTrue(scheduler.isDue(JOB, 1000));
+
+    scheduler.forget("folder");
+    assertEquals(1, scheduler.size());
+    assertFalse(scheduler.isDue("folder-2/job", 1000));
+  }
+
+  public void testRename() throws Exception {
+    SurroundSCMPollScheduler scheduler = new SurroundSCMPollScheduler(BASE, MAX, fixed(0.5));
+    scheduler.record(JOB, 0, 10, false);
+    scheduler.rename("folder", "renamed");
+    assertEquals(1, scheduler.size());
+    assertTrue(scheduler.isDue(JOB, 1000));
+    assertEquals(BASE, scheduler.getNextDueAt("renamed/job"));
+  }
+
+  public void testHistoryPerJob() throws Exception {
+    SurroundSCMPollScheduler scheduler = new SurroundSCMPollScheduler(BASE, MAX, fixed(0.5));
+    scheduler.record(JOB, 0, 10, false);
+    assertFalse(scheduler.isDue(JOB, 1000));
+    assertTrue(scheduler.isDue("other-job", 1000));
+  }
+
+  public static Test suite() {
+    return new TestSuite(SurroundSCMPollSchedulerTest.class);
+  }
+}
@@ -0,0 +1,71 @@
+package hudson.scm;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * SurroundSCMRepositoryListing Tester.
+ */
+public class SurroundSCMRepositoryListingTest extends TestCase {
+  public SurroundSCMRepositoryListingTest(String name) {
+    super(name);
+  }
+
+  public void testParse() throws Exception {
+    String output = "Mainline/Project\n"
+            + " build.xml    current   3\n"
+            + "  detail line\n"
+            + "Mainline/Project/core\n"
+            + " a.java    current   1\n"
+            + " b.java    current   1\n"
+            + "Mainline/Project/core/util\n"
+            + " c.java    current   1\n"
+            + "Mainline/Project/docs\r\n"
+            + "Mainline/Project/web\n"
+            + " index.html    current   7\n";
+    SurroundSCMRepositoryListing listing = SurroundSCMRepositoryListing.parse("Mainline/Project", output);
+
+    assertEquals(1, listing.getRootFileCount());
+    assertEquals(3, listing.getSubRepositories().size());
+    assertEquals(Long.valueOf(3), listing.getSubRepositories().get("core"));
+    assertEquals(Long.valueOf(0), listing.getSubRepositories().get("docs"));
+    assertEquals(Long.valueOf(1), listing.getSubRepositories().get("web"));
+
+    assertEquals(5, listing.getFiles().size());
+    assertEquals("3", listing.getFiles().get("build.xml"));
+    assertEquals("1", listing.getFiles().get("core/util/c.java"));
+    assertEquals("7", listing.getFiles().get("web/index.html"));
+  }
+
+  public void testPartitionBalancesWeights() throws Exception {
+    Map<String, Long> weights = new HashMap<>();
+    weights.put("a", 10L);
+    weights.put("b", 6L);
+    weights.put("c", 5L);
+    weights.put("d", 4L);
+    weights.put("e", 1L);
+
+    List<List<String>> groups = SurroundSCMRepositoryListing.partition(weights, 2);
+    assertEquals(2, groups.size());
+    assertEquals(Arrays.asList("a", "d"), groups.get(0));
+    assertEquals(Arrays.asList("b", "c", "e"), groups.get(1));
+  }
+
+  public void testPartitionNeverReturnsEmptyGroups() throws Exception {
+    Map<String, Long> weights = new HashMap<>();
+    weights.put("a", 1L);
+    weights.put("b", 1L);
+
+    assertEquals(2, SurroundSCMRepositoryListing.partition(weights, 8).size());
+  }
+
+  public static Test suite() {
+    return new TestSuite(SurroundSCMRepositoryListingTest.class);
+  }
+}
@@ -0,0 +1,75 @@
+package hudson.scm;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * SurroundSCMRepositoryScope Tester.
+ */
+public class SurroundSCMRepositoryScopeTest extends TestCase {
+  private final static String REPOSITORY = "Mainline/Project";
+  private final static String LISTING = "Mainline/Project\n"
+          + " build.xml    current   3\n"
+          + "Mainline/Project/core\n"
+          + " a.java    current   1\n"
+          + "Mainline/Project/core/gen\n"
+          + " b.java    current   1\n"
+          + "Mainline/Project/core/util\n"
+          + " c.java    current   1\n"
+          + "Mainline/Project/web\n"
+          + " index.html    current   7\n";
+
+  public SurroundSCMRepositoryScopeTest(String name) {
+    super(name);
+  }
+
+  private static SurroundSCMChangeRecord record(String repository) {
+    return new SurroundSCMChangeRecord(repository, "a.txt", "2", "Check in", "20200101120000", "", "user",
+            "user@example.com");
+  }
+
+  public void testEmptyScope() throws Exception {
+    SurroundSCMRepositoryScope scope = new SurroundSCMRepositoryScope(null, " \n");
+    assertTrue(scope.isEmpty());
+    assertEquals(Collections.singletonList(""), scope.getRoots());
+    assertEquals("[/ (recursive)]", scope.plan(null).toString());
+  }
+
+  public void testIncludedRootsAreNormalized() throws Exception {
+    SurroundSCMRepositoryScope scope = new SurroundSCMRepositoryScope("/core/\ncore/util\nweb", null);
+    assertEquals(Arrays.asList("core", "web"), scope.getRoots());
+    assertTrue(scope.contains("core/util"));
+    assertFalse(scope.contains("coredump"));
+    assertFalse(scope.contains(""));
+  }
+
+  public void testContainsRecord() throws Exception {
+    SurroundSCMRepositoryScope scope = new SurroundSCMRepositoryScope("core", "core/gen");
+    assertTrue(scope.contains(record(REPOSITORY + "/core"), REPOSITORY));
+    assertFalse(scope.contains(record(REPOSITORY + "/core/gen/x"), REPOSITORY));
+    assertFalse(scope.contains(record(REPOSITORY), REPOSITORY));
+    assertFalse(scope.contains(record("Mainline/Other/core"), REPOSITORY));
+  }
+
+  public void testPlanAroundExclusions() throws Exception {
+    SurroundSCMRepositoryListing listing = SurroundSCMRepositoryListing.parse(REPOSITORY, LISTING);
+    SurroundSCMRepositoryScope scope = new SurroundSCMRepositoryScope(null, "core/gen");
+    assertEquals("[/, core, core/util (recursive), web (recursive)]", scope.plan(listing).toString());
+  }
+
+  public void testSplit() throws Exception {
+    SurroundSCMRepositoryListing listing = SurroundSCMRepositoryListing.parse(REPOSITORY, LISTING);
+    SurroundSCMRepositoryScope scope = new SurroundSCMRepositoryScope(null, null);
+    assertEquals("[/, core (recursive), web (recursive)]",
+            SurroundSCMRepositoryScope.split(scope.plan(listing), listing).toString());
+    assertEquals(4, SurroundSCMRepositoryScope.split(scope.plan(listing), listing).get(1).getWeight());
+  }
+
+  public static Test suite() {
+    return new TestSuite(SurroundSCMRepositoryScopeTest.class);
+  }
+}
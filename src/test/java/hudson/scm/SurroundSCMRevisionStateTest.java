@@ -0,0 +1,52 @@
+package hudson.scm;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.Date;
+
+/**
+ * SurroundSCMRevisionState Tester.
+ */
+public class SurroundSCMRevisionStateTest extends TestCase {
+  private static final Date BUILD_DATE = new Date(1500000600000L);
+  private static final Date PREVIOUS_CHANGE = new Date(1500000000000L);
+  private static final Date NEW_CHANGE = new Date(1500000300000L);
+
+  public SurroundSCMRevisionStateTest(String name) {
+    super(name);
+  }
+
+  public void testChangesSinceLastChange() throws Exception {
+    SurroundSCMRevisionState state = new SurroundSCMRevisionState(BUILD_DATE, 3, PREVIOUS_CHANGE);
+    assertEquals(new Date(PREVIOUS_CHANGE.getTime() + 1000L), state.getChangesSince());
+    assertEquals(BUILD_DATE, state.getDate());
+  }
+
+  public void testChangesSinceBuildDate() throws Exception {
+    assertEquals(BUILD_DATE, new SurroundSCMRevisionState(BUILD_DATE, 3).getChangesSince());
+    assertEquals(BUILD_DATE, new SurroundSCMRevisionState(BUILD_DATE, 3, null).getChangesSince());
+  }
+
+  public void testNewerChangeReplacesTheMark() throws Exception {
+    assertEquals(NEW_CHANGE, SurroundSCMRevisionState.nextLastChangeDate(PREVIOUS_CHANGE, NEW_CHANGE, true));
+    assertEquals(NEW_CHANGE, SurroundSCMRevisionState.nextLastChangeDate(null, NEW_CHANGE, true));
+  }
+
+  public void testMarkCarriesOverWhenTheQueryFoundNothing() throws Exception {
+    assertEquals(PREVIOUS_CHANGE, SurroundSCMRevisionState.nextLastChangeDate(PREVIOUS_CHANGE, null, true));
+  }
+
+  public void testMarkIsDroppedWithoutQuery() throws Exception {
+    // Ex. a pipeline checkout with 'changelog: false', no 'cc' covered the window.
+    Date mark = SurroundSCMRevisionState.nextLastChangeDate(PREVIOUS_CHANGE, null, false);
+    assertNull(mark);
+    assertEquals(BUILD_DATE, new SurroundSCMRevisionState(BUILD_DATE, 4, mark).getChangesSince());
+    assertNull(SurroundSCMRevisionState.nextLastChangeDate(PREVIOUS_CHANGE, NEW_CHANGE, false));
+  }
+
+  public static Test suite() {
+    return new TestSuite(SurroundSCMRevisionStateTest.class);
+  }
+}
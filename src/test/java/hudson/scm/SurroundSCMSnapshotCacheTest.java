@@ -0,0 +1,159 @@
+package hudson.scm;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import hudson.Util;
+
+/**
+ * SurroundSCMSnapshotCache Tester.
+ */
+public class SurroundSCMSnapshotCacheTest extends TestCase {
+  private Path root;
+  private Path cache;
+  private Path workspace;
+  private Path files;
+
+  public SurroundSCMSnapshotCacheTest(String name) {
+    super(name);
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    root = Files.createTempDirectory("sscm-cache");
+    cache = Files.createDirectories(root.resolve("key"));
+    workspace = Files.createTempDirectory("workspace");
+    files = workspace.resolve("metadata").resolve("cache-files.gz");
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    Util.deleteRecursive(root.toFile());
+    Util.deleteRecursive(workspace.toFile());
+  }
+
+  private static void write(Path file, String content) throws Exception {
+    Files.createDirectories(file.getParent());
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static String read(Path file) throws Exception {
+    return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+  }
+
+  private long populate(boolean hardlinks) throws Exception {
+    return new SurroundSCMSnapshotCache.Populate(workspace.toString(), hardlinks, null,
+            root.resolve("key.index.gz").toString(), root.resolve("key.snapshot").toString(),
+            root.resolve("key.used").toString(), files.toString()).invoke(cache.toFile(), null);
+  }
+
+  public void testPopulate() throws Exception {
+    write(cache.resolve("a.txt"), "aaa");
+    write(cache.resolve("sub").resolve("b.txt"), "bb");
+    write(workspace.resolve("build.out"), "output");
+
+    assertEquals(2, populate(false));
+    assertEquals("aaa", read(workspace.resolve("a.txt")));
+    assertEquals("bb", read(workspace.resolve("sub").resolve("b.txt")));
+    assertEquals("5", read(root.resolve("key.used")));
+
+    // Nothing changed, nothing is copied.
+    assertEquals(0, populate(false));
+  }
+
+  public void testPopulateDeletesFilesThatLeftTheCache() throws Exception {
+    write(cache.resolve("a.txt"), "aaa");
+    write(cache.resolve("sub").resolve("b.txt"), "bb");
+    write(workspace.resolve("build.out"), "output");
+    populate(false);
+
+    Files.delete(cache.resolve("sub").resolve("b.txt"));
+    write(cache.resolve("c.txt"), "c");
+    assertEquals(1, populate(false));
+    assertFalse(Files.exists(workspace.resolve("sub").resolve("b.txt")));
+    assertEquals("c", read(workspace.resolve("c.txt")));
+    assertEquals("output", read(workspace.resolve("build.out")));
+  }
+
+  public void testHardlinksNeverLinkTheCache() throws Exception {
+    write(cache.resolve("a.txt"), "old");
+    populate(true);
+    Path published = root.resolve("key.snapshot").resolve("a.txt");
+    assertTrue(Files.isSameFile(published, workspace.resolve("a.txt")));
+    assertFalse(Files.isSameFile(cache.resolve("a.txt"), workspace.resolve("a.txt")));
+    assertEquals("6", read(root.resolve("key.used")));
+
+    // 'sscm get' rewriting the cache file in place must not reach the workspace.
+    Files.write(cache.resolve("a.txt"), "new!".getBytes(StandardCharsets.UTF_8));
+    Files.setLastModifiedTime(cache.resolve("a.txt"), FileTime.fromMillis(System.currentTimeMillis() + 5000));
+    assertEquals("old", read(workspace.resolve("a.txt")));
+
+    assertEquals(1, populate(true));
+    assertEquals("new!", read(workspace.resolve("a.txt")));
+    assertTrue(Files.isSameFile(published, workspace.resolve("a.txt")));
+
+    Files.delete(cache.resolve("a.txt"));
+    populate(true);
+    assertFalse(Files.exists(published));
+    assertFalse(Files.exists(workspace.resolve("a.txt")));
+  }
+
+  public void testContentStore() throws Exception {
+    write(cache.resolve("a.txt"), "same");
+    write(cache.resolve("b.txt"), "same");
+    Path store = root.resolve(SurroundSCMContentStore.DIRECTORY_NAME);
+    long populated = new SurroundSCMSnapshotCache.Populate(workspace.toString(), false, store.toString(),
+            root.resolve("key.index.gz").toString(), root.resolve("key.snapshot").toString(),
+            root.resolve("key.used").toString(), files.toString()).invoke(cache.toFile(), null);
+    assertEquals(2, populated);
+    assertTrue(Files.isSameFile(workspace.resolve("a.txt"), workspace.resolve("b.txt")));
+    assertFalse(Files.isSameFile(cache.resolve("a.txt"), workspace.resolve("a.txt")));
+    assertTrue(Files.exists(root.resolve("key.index.gz")));
+    assertFalse(Files.exists(root.resolve("key.snapshot")));
+  }
+
+  private void cacheDirectory(String key, String size, long lastUsed) throws Exception {
+    write(root.resolve(key).resolve("file.txt"), "x");
+    write(root.resolve(key + ".used"), size);
+    Files.setLastModifiedTime(root.resolve(key + ".used"), FileTime.fromMillis(lastUsed));
+  }
+
+  public void testEvictLeastRecentlyUsed() throws Exception {
+    Util.deleteRecursive(cache.toFile());
+    // The sizes come from the markers, not from the directories' content.
+    cacheDirectory("k1", "100", 1000000);
+    cacheDirectory("k2", "100", 3000000);
+    cacheDirectory("k3", "100", 2000000);
+    cacheDirectory("k4", "100", 4000000);
+
+    List<String> evicted = new SurroundSCMSnapshotCache.Evict(250, new HashSet<>(Arrays.asList("k3")))
+            .invoke(root.toFile(), null);
+    assertEquals(Arrays.asList("k1", "k2"), evicted);
+    assertFalse(Files.exists(root.resolve("k1")));
+    assertFalse(Files.exists(root.resolve("k1.used")));
+    assertTrue(Files.exists(root.resolve("k3")));
+    assertTrue(Files.exists(root.resolve("k4")));
+  }
+
+  public void testEvictSizesDirectoriesWithoutMarker() throws Exception {
+    write(cache.resolve("a.txt"), "0123456789");
+    assertEquals(Arrays.asList("key"), new SurroundSCMSnapshotCache.Evict(5, new HashSet<String>())
+            .invoke(root.toFile(), null));
+    assertTrue(new SurroundSCMSnapshotCache.Evict(5, new HashSet<String>()).invoke(root.toFile(), null).isEmpty());
+    assertFalse(new File(root.toFile(), "key").exists());
+  }
+
+  public static Test suite() {
+    return new TestSuite(SurroundSCMSnapshotCacheTest.class);
+  }
+}
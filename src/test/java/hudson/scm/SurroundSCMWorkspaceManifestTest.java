@@ -0,0 +1,119 @@
+package hudson.scm;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import hudson.FilePath;
+import hudson.Util;
+
+/**
+ * SurroundSCMWorkspaceManifest Tester.
+ */
+public class SurroundSCMWorkspaceManifestTest extends TestCase {
+  private File root;
+  private FilePath workspace;
+
+  public SurroundSCMWorkspaceManifestTest(String name) {
+    super(name);
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    root = Files.createTempDirectory("manifest").toFile();
+    workspace = new FilePath(new File(root, "ws"));
+    write("a.txt", "a");
+    write("dir/b.txt", "bb");
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    Util.deleteRecursive(root);
+  }
+
+  private File write(String path, String content) throws Exception {
+    File file = new File(workspace.getRemote(), path);
+    Files.createDirectories(file.getParentFile().toPath());
+    Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    file.setLastModified(1500000000000L);
+    return file;
+  }
+
+  private static Map<String, String> files(String... pathsAndVersions) {
+    Map<String, String> files = new HashMap<>();
+    for (int i = 0; i < pathsAndVersions.length; i += 2) {
+      files.put(pathsAndVersions[i], pathsAndVersions[i + 1]);
+    }
+    return files;
+  }
+
+  public void testMissingManifest() throws Exception {
+    SurroundSCMWorkspaceManifest.Verification verification = SurroundSCMWorkspaceManifest.verify(workspace);
+    assertFalse(verification.isFound());
+    assertFalse(verification.isIntact());
+  }
+
+  public void testWriteAndVerify() throws Exception {
+    SurroundSCMWorkspaceManifest.write(workspace, files("a.txt", "1", "dir/b.txt", "2", "gone.txt", "3"));
+    SurroundSCMWorkspaceManifest.Verification verification = SurroundSCMWorkspaceManifest.verify(workspace);
+    assertTrue(verification.isFound());
+    assertTrue(verification.isIntact());
+    assertEquals("Files missing on disk are not recorded", 2, verification.getChecked());
+  }
+
+  public void testVerifyFindsModifiedAndMissingFiles() throws Exception {
+    SurroundSCMWorkspaceManifest.write(workspace, files("a.txt", "1", "dir/b.txt", "2"));
+    write("a.txt", "changed");
+    assertTrue(new File(workspace.getRemote(), "dir/b.txt").delete());
+
+    SurroundSCMWorkspaceManifest.Verification verification = SurroundSCMWorkspaceManifest.verify(workspace);
+    assertTrue(verification.isFound());
+    assertFalse(verification.isIntact());
+    assertEquals(2, verification.getChecked());
+    assertEquals(2, verification.getMismatched());
+    assertEquals(Arrays.asList("a.txt", "dir/b.txt"), verification.getSample());
+  }
+
+  public void testVerifyFindsTouchedFile() throws Exception {
+    SurroundSCMWorkspaceManifest.write(workspace, files("a.txt", "1"));
+    assertTrue(new File(workspace.getRemote(), "a.txt").setLastModified(1600000000000L));
+    assertFalse(SurroundSCMWorkspaceManifest.verify(workspace).isIntact());
+  }
+
+  public void testUpdate() throws Exception {
+    SurroundSCMWorkspaceManifest.write(workspace, files("a.txt", "1", "dir/b.txt", "2"));
+    write("a.txt", "new content");
+    write("c.txt", "c");
+    assertTrue(new File(workspace.getRemote(), "dir/b.txt").delete());
+
+    SurroundSCMWorkspaceManifest.update(workspace, files("a.txt", "2", "c.txt", "1"),
+            Collections.singletonList("dir/b.txt"));
+    SurroundSCMWorkspaceManifest.Verification verification = SurroundSCMWorkspaceManifest.verify(workspace);
+    assertTrue(verification.isIntact());
+    assertEquals(2, verification.getChecked());
+  }
+
+  public void testUpdateWithoutManifest() throws Exception {
+    SurroundSCMWorkspaceManifest.update(workspace, files("a.txt", "2"), Collections.<String>emptyList());
+    assertFalse("A partial manifest would not describe the workspace",
+            SurroundSCMWorkspaceManifest.verify(workspace).isFound());
+  }
+
+  public void testDelete() throws Exception {
+    SurroundSCMWorkspaceManifest.write(workspace, files("a.txt", "1"));
+    SurroundSCMWorkspaceManifest.delete(workspace);
+    assertFalse(SurroundSCMWorkspaceManifest.verify(workspace).isFound());
+  }
+
+  public static Test suite() {
+    return new TestSuite(SurroundSCMWorkspaceManifestTest.class);
+  }
+}